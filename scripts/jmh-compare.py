@@ -0,0 +1,46 @@
+#!/usr/bin/env python3
+"""Compare two JMH JSON result files (-rf json) benchmark by benchmark.
+
+Usage: scripts/jmh-compare.py target/jmh-before.json target/jmh-after.json
+
+For avgt/sample modes lower is better; for thrpt higher is better. A change is
+flagged only when the intervals (score +/- error) do not overlap.
+"""
+import json
+import sys
+
+
+def load(path):
+    out = {}
+    with open(path) as f:
+        for r in json.load(f):
+            params = ",".join(f"{k}={v}" for k, v in sorted((r.get("params") or {}).items()))
+            key = r["benchmark"].rsplit(".", 1)[-1] + (f" [{params}]" if params else "")
+            m = r["primaryMetric"]
+            err = m.get("scoreError")
+            err = 0.0 if err in (None, "NaN") or err != err else float(err)
+            out[key] = (float(m["score"]), err, m["scoreUnit"], r["mode"])
+    return out
+
+
+def main():
+    if len(sys.argv) != 3:
+        sys.exit(__doc__)
+    before, after = load(sys.argv[1]), load(sys.argv[2])
+    width = max((len(k) for k in after), default=10)
+    print(f"{'benchmark':<{width}}  {'before':>12}  {'after':>12}  {'change':>8}  unit")
+    for key in sorted(after):
+        s2, e2, unit, mode = after[key]
+        if key not in before:
+            print(f"{key:<{width}}  {'-':>12}  {s2:>12.3f}  {'new':>8}  {unit}")
+            continue
+        s1, e1, _, _ = before[key]
+        pct = (s2 - s1) / s1 * 100 if s1 else 0.0
+        better = s2 > s1 if mode == "thrpt" else s2 < s1
+        significant = abs(s2 - s1) > e1 + e2
+        flag = ("faster" if better else "SLOWER") if significant else "~"
+        print(f"{key:<{width}}  {s1:>12.3f}  {s2:>12.3f}  {pct:>+7.1f}%  {unit} {flag}")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,198 @@
+package org.example.bench;
+
+import org.example.core.Database;
+import org.example.core.Job;
+import org.example.core.JobRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JobRepository hot paths against a throwaway SQLite DB pre-populated with
+ * {@code rows} jobs (70% COMPLETED, 20% PENDING, 5% DEAD, 5% scheduled in the
+ * future) spread over 4 queues and 8 tenants. Each fork gets a fresh copy of a
+ * per-size template built once under {@code target/jmh-db}, so the numbers for
+ * different sizes are comparable and 1M-row setup is paid once.
+ * <p>
+ * Claim benchmarks hand the job back with {@code releaseClaim} so the PENDING
+ * set stays constant; complete and fail benchmarks claim in an untimed
+ * per-invocation setup and restore the row in an untimed teardown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobRepositoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Db {
+        @Param({ "1000", "100000", "1000000" })
+        public int rows;
+
+        public JobRepository repo;
+        private Path home;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            Path template = Paths.get("target", "jmh-db", "template-" + rows + ".db").toAbsolutePath();
+            if (!Files.exists(template))
+                buildTemplate(template, rows);
+            // Database reads user.home once, so point it at a fresh copy before first use
+            home = Files.createTempDirectory("queuectl-jmh");
+            Path db = home.resolve(".queuectl").resolve("queuectl.db");
+            Files.createDirectories(db.getParent());
+            Files.copy(template, db, StandardCopyOption.REPLACE_EXISTING);
+            System.setProperty("user.home", home.toString());
+            Database.init();
+            repo = new JobRepository(2);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            try (var files = Files.walk(home)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+
+        private static synchronized void buildTemplate(Path template, int rows) throws Exception {
+            Files.createDirectories(template.getParent());
+            Path tmp = template.resolveSibling(template.getFileName() + ".tmp");
+            Files.deleteIfExists(tmp);
+            // let Database create the current schema in a scratch home, then fill it
+            Path scratch = Files.createTempDirectory("queuectl-jmh-template");
+            Path scratchDb = scratch.resolve(".queuectl").resolve("queuectl.db");
+            Files.createDirectories(scratchDb.getParent());
+            ProcessBuilder pb = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-Duser.home=" + scratch, "-cp", System.getProperty("java.class.path"),
+                    "org.example.Main", "status");
+            pb.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            if (pb.start().waitFor() != 0)
+                throw new IllegalStateException("schema bootstrap failed");
+            Files.move(scratchDb, tmp);
+            try (var files = Files.walk(scratch)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+            long now = Instant.now().getEpochSecond();
+            String sql = "INSERT INTO jobs (id, command, state, attempts, max_retries, created_at, updated_at, available_at, priority, timeout_seconds, queue, tenant) "
+                    + "VALUES (?, 'true', ?, ?, 3, ?, ?, ?, ?, 0, ?, ?)";
+            try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + tmp)) {
+                c.setAutoCommit(false);
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    for (int i = 0; i < rows; i++) {
+                        int bucket = i % 20;
+                        String state = bucket < 14 ? "COMPLETED" : bucket < 18 ? "PENDING" : bucket < 19 ? "DEAD" : "PENDING";
+                        long created = now - rows + i;
+                        ps.setString(1, UUID.randomUUID().toString());
+                        ps.setString(2, state);
+                        ps.setInt(3, state.equals("DEAD") ? 4 : 0);
+                        ps.setLong(4, created);
+                        ps.setLong(5, created);
+                        ps.setLong(6, bucket == 19 ? now + 86400 : created);
+                        ps.setInt(7, i % 5);
+                        ps.setString(8, "q" + (i % 4));
+                        ps.setString(9, "t" + (i % 8));
+                        ps.addBatch();
+                        if (i % 10_000 == 9_999)
+                            ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                c.commit();
+                try (Statement s = c.createStatement()) {
+                    s.execute("ANALYZE");
+                }
+            }
+            Files.move(tmp, template, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+        public final String id = "bench-" + SEQ.incrementAndGet();
+        Job claimed;
+
+        @Setup(Level.Invocation)
+        public void claim(Db db, BenchmarkParamsHolder params) {
+            // only the complete/fail benchmarks need a job claimed up front
+            if (params.needsClaim)
+                claimed = db.repo.claimPendingJob(id);
+        }
+
+        @TearDown(Level.Invocation)
+        public void restore() throws Exception {
+            if (claimed == null)
+                return;
+            try (Connection c = Database.getConnection();
+                    PreparedStatement ps = c.prepareStatement(
+                            "UPDATE jobs SET state='PENDING', attempts=0, available_at=?, locked_by=NULL, locked_at=NULL, lease_expires_at=NULL WHERE id=?")) {
+                ps.setLong(1, Instant.now().getEpochSecond() - 1);
+                ps.setString(2, claimed.getId());
+                ps.executeUpdate();
+            }
+            claimed = null;
+        }
+    }
+
+    /** Tells the per-invocation setup whether the running benchmark needs a claimed job. */
+    @State(Scope.Benchmark)
+    public static class BenchmarkParamsHolder {
+        boolean needsClaim;
+
+        @Setup(Level.Trial)
+        public void setUp(org.openjdk.jmh.infra.BenchmarkParams params) {
+            String name = params.getBenchmark();
+            needsClaim = name.endsWith(".complete") || name.endsWith(".failRetry");
+        }
+    }
+
+    @Benchmark
+    public JobRepository.EnqueueResult enqueue(Db db) {
+        return db.repo.createJob(new Job(UUID.randomUUID().toString(), "true", 3, 1));
+    }
+
+    @Benchmark
+    public Job claim(Db db, Worker w) {
+        Job job = db.repo.claimPendingJob(w.id);
+        if (job != null)
+            db.repo.releaseClaim(job.getId(), w.id);
+        return job;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Job claimContended(Db db, Worker w) {
+        return claim(db, w);
+    }
+
+    @Benchmark
+    public void complete(Db db, Worker w) {
+        if (w.claimed != null)
+            db.repo.markJobCompleted(w.claimed.getId(), w.id, "ok");
+    }
+
+    @Benchmark
+    public void failRetry(Db db, Worker w) {
+        if (w.claimed != null)
+            db.repo.handleFailedAttempt(w.claimed, w.id, "exit=1");
+    }
+
+    @Benchmark
+    public void stateCounts(Db db, Blackhole bh) {
+        bh.consume(db.repo.stateCounts());
+    }
+}
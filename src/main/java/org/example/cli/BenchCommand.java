@@ -0,0 +1,136 @@
+package org.example.cli;
+
+import com.google.gson.GsonBuilder;
+import org.example.core.Bench;
+import org.example.core.ConfigRepository;
+import org.example.core.Database;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+@Command(name = "bench", description = "Run a synthetic workload against an isolated data dir and report throughput and latency percentiles.")
+public class BenchCommand implements Runnable {
+    @Option(names = "--jobs", description = "Number of jobs to enqueue", defaultValue = "1000")
+    int jobs;
+
+    @Option(names = "--workers", description = "Workers per JVM", defaultValue = "4")
+    int workers;
+
+    @Option(names = "--processes", description = "Run the workers in P separate JVMs sharing the DB, and verify exactly-once claiming", defaultValue = "0")
+    int processes;
+
+    @Option(names = "--child", hidden = true, description = "Internal: one worker JVM of a --processes run")
+    boolean child;
+
+    @Option(names = "--rate", description = "Enqueue rate in jobs/sec (0 = burst: all up front)", defaultValue = "0")
+    double rate;
+
+    @Option(names = "--workload", split = ",", description = "Mix of noop, sleep, cpu, output (round-robin)", defaultValue = "noop")
+    List<String> workloads;
+
+    @Option(names = "--shell", description = "Run jobs as /bin/sh commands instead of in-process java: handlers")
+    boolean shell;
+
+    @Option(names = "--sleep-ms", description = "sleep workload duration", defaultValue = "10")
+    int sleepMs;
+
+    @Option(names = "--cpu-rounds", description = "cpu workload SHA-256 rounds", defaultValue = "20000")
+    int cpuRounds;
+
+    @Option(names = "--output-lines", description = "output workload lines per job", defaultValue = "1000")
+    int outputLines;
+
+    @Option(names = "--config", description = "Config for the bench DB, e.g. --config claim_policy=fair (repeatable)")
+    Map<String, String> config;
+
+    @Option(names = "--timeout", description = "Give up after this many seconds", defaultValue = "600")
+    long timeoutSeconds;
+
+    @Option(names = "--dir", description = "Data dir to use and keep (default: a temp dir, deleted afterwards)")
+    Path dir;
+
+    @Option(names = "--report", description = "Where to write the JSON report ('-' = stdout)", defaultValue = "bench-report.json")
+    String report;
+
+    @Override
+    public void run() {
+        if (child) {
+            try {
+                Bench.runChild(workers);
+            } catch (Exception e) {
+                System.err.println("Bench child failed: " + e.getMessage());
+            }
+            return;
+        }
+        for (String w : workloads) {
+            if (!Bench.WORKLOADS.contains(w)) {
+                System.err.println("Unknown workload '" + w + "' (expected one of " + Bench.WORKLOADS + ")");
+                return;
+            }
+        }
+        try {
+            Path home = dir != null ? dir.toAbsolutePath() : Files.createTempDirectory("queuectl-bench");
+            if (Files.exists(home.resolve(".queuectl").resolve("queuectl.db"))) {
+                System.err.println("Refusing to bench against an existing database in " + home);
+                return;
+            }
+            // Database resolves its paths from user.home on first use
+            System.setProperty("user.home", home.toString());
+            Database.init();
+            if (config != null) {
+                ConfigRepository cfg = new ConfigRepository();
+                config.forEach(cfg::set);
+            }
+            System.out.printf("[bench] %d jobs, %s, %s, workload=%s (%s) in %s%n", jobs,
+                    processes > 0 ? processes + " processes x " + workers + " workers" : workers + " workers",
+                    rate <= 0 ? "burst" : rate + " jobs/s", workloads, shell ? "shell" : "java", home);
+            Map<String, Object> result = new Bench(new Bench.Options(jobs, workers, processes, rate, workloads, shell,
+                    sleepMs, cpuRounds, outputLines, timeoutSeconds)).run();
+            printSummary(result);
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(result);
+            if ("-".equals(report)) {
+                System.out.println(json);
+            } else {
+                Files.writeString(Paths.get(report), json + System.lineSeparator());
+                System.out.println("[bench] report written to " + report);
+            }
+            if (dir == null) {
+                try (var files = Files.walk(home)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Bench failed: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printSummary(Map<String, Object> r) {
+        Map<String, Object> res = (Map<String, Object>) r.get("results");
+        System.out.printf("%nthroughput: %s jobs/s  (completed=%s failed=%s wall=%ss enqueue=%ss%s)%n",
+                res.get("throughput_jobs_per_sec"), res.get("completed"), res.get("failed"), res.get("wall_seconds"),
+                res.get("enqueue_seconds"), Boolean.TRUE.equals(res.get("timed_out")) ? " TIMED OUT" : "");
+        System.out.printf("lock waits: %s busy retries, %s ms waiting%n", res.get("busy_retries"), res.get("lock_wait_ms"));
+        if (res.containsKey("exactly_once")) {
+            System.out.printf("claims: %s (%s/s) per process=%s empty=%s busy timeouts=%s other errors=%s%n",
+                    res.get("claims"), res.get("claims_per_sec"), res.get("claims_per_process"), res.get("empty_claims"),
+                    res.get("busy_timeouts"), res.get("other_claim_errors"));
+            System.out.printf("exactly-once: %s (duplicates=%s lost=%s)%n",
+                    Boolean.TRUE.equals(res.get("exactly_once")) ? "OK" : "VIOLATED", res.get("duplicate_claims"),
+                    res.get("lost_jobs"));
+        }
+        System.out.printf("%-14s %8s %9s %9s %9s %9s %9s%n", "latency (ms)", "count", "p50", "p99", "p999", "max", "mean");
+        Map<String, Object> lat = (Map<String, Object>) r.get("latency_ms");
+        for (Map.Entry<String, Object> e : lat.entrySet()) {
+            Map<String, Object> h = (Map<String, Object>) e.getValue();
+            System.out.printf("%-14s %8s %9s %9s %9s %9s %9s%n", e.getKey(), h.get("count"), h.get("p50"), h.get("p99"),
+                    h.get("p999"), h.get("max"), h.get("mean"));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.cli;
+
+import org.example.core.Database;
+import org.example.core.DbStats;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.util.Comparator;
+import java.util.List;
+
+@Command(name = "diag", description = "Diagnostics.", subcommands = { DiagCommand.Db.class })
+public class DiagCommand implements Runnable {
+    @Override
+    public void run() {
+        System.out.println("diag [db [--sort total|mean|p99|calls|lock] [--limit N] [--plans] [--include-exited]]");
+    }
+
+    @Command(name = "db", description = "Per-statement database timings and lock waits of running queuectl processes.")
+    static class Db implements Runnable {
+        @Option(names = "--sort", description = "total (default), mean, p99, calls or lock", defaultValue = "total")
+        String sort;
+
+        @Option(names = "--limit", description = "Statements to show", defaultValue = "20")
+        int limit;
+
+        @Option(names = "--plans", description = "Also print the query plan of statements that were logged as slow")
+        boolean plans;
+
+        @Option(names = "--include-exited", description = "Include stats published by processes that have exited")
+        boolean includeExited;
+
+        @Override
+        public void run() {
+            Database.init();
+            Comparator<DbStats.Summary> order = switch (sort) {
+                case "total" -> Comparator.comparingDouble(DbStats.Summary::totalMs);
+                case "mean" -> Comparator.comparingDouble(DbStats.Summary::meanMs);
+                case "p99" -> Comparator.comparingDouble(DbStats.Summary::p99Ms);
+                case "calls" -> Comparator.comparingLong(DbStats.Summary::calls);
+                case "lock" -> Comparator.comparingDouble(DbStats.Summary::lockWaitMs);
+                default -> null;
+            };
+            if (order == null) {
+                System.err.println("Unknown --sort '" + sort + "' (expected total, mean, p99, calls or lock)");
+                return;
+            }
+            List<DbStats.Summary> rows = DbStats.collect(includeExited).stream()
+                    .sorted(order.reversed()).limit(limit).toList();
+            if (rows.isEmpty()) {
+                System.out.println("No statement stats yet. Running workers and the web server publish every 15s.");
+                return;
+            }
+            System.out.printf("%9s %10s %8s %8s %8s %7s %6s %9s  %s%n", "CALLS", "TOTAL_MS", "MEAN", "P99", "MAX",
+                    "BUSY", "ERR", "LOCK_MS", "STATEMENT");
+            for (DbStats.Summary r : rows) {
+                String sql = r.sql().length() > 90 ? r.sql().substring(0, 87) + "..." : r.sql();
+                System.out.printf("%9d %10.1f %8.2f %8.2f %8.1f %7d %6d %9.1f  %s%n", r.calls(), r.totalMs(),
+                        r.meanMs(), r.p99Ms(), r.maxMs(), r.busyRetries(), r.errors(), r.lockWaitMs(), sql);
+                if (plans && r.plan() != null)
+                    System.out.println("          plan: " + r.plan());
+            }
+            System.out.println("(BUSY = busy-handler retries while waiting for a lock; SQLITE_BUSY give-ups count as ERR)");
+        }
+    }
+}
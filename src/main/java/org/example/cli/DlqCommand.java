@@ -41,12 +41,10 @@ public class DlqCommand implements Runnable {
         public void run() {
             Database.init();
             JobRepository repo = new JobRepository(2);
-            Job j = repo.getJobById(jobId);
-            if (j == null || j.getState() != org.example.core.JobState.DEAD) {
+            if (!repo.retryDeadJob(jobId)) {
                 System.out.println("Job not in DLQ: " + jobId);
                 return;
             }
-            repo.retryDeadJob(jobId);
             System.out.println("Retried job from DLQ: " + jobId);
         }
     }
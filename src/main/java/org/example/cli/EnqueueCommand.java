@@ -26,6 +26,21 @@ public class EnqueueCommand implements Runnable {
     @Option(names = "--timeout", description = "Timeout seconds (0 = none)")
     Integer timeoutSeconds;
 
+    @Option(names = "--queue", description = "Queue name (default: default)")
+    String queue;
+
+    @Option(names = "--tenant", description = "Owner/tenant for fair scheduling (default: default)")
+    String tenant;
+
+    @Option(names = "--after", split = ",", description = "Run only after these job IDs complete (comma separated)")
+    java.util.List<String> after;
+
+    @Option(names = "--dedup-key", description = "Idempotency key: re-enqueueing the same key within the window returns the existing job")
+    String dedupKey;
+
+    @Option(names = "--dedup-window", description = "Seconds the dedup key is enforced (default: dedup_window_seconds, 86400)")
+    Integer dedupWindow;
+
     @Option(names = "--run_at", description = "Schedule run time (epoch seconds or ISO-8601 e.g. 2024-01-01T12:00:00Z or relative +30s,+5m,+2h)")
     String runAtSpec;
 
@@ -43,8 +58,13 @@ public class EnqueueCommand implements Runnable {
         int mr = (maxRetries == null ? defaultRetries : maxRetries);
         int prio = (priority == null ? defaultPriority : priority);
         Job job = new Job(jobId, command, mr, prio);
+        job.setQueue(queue);
+        job.setTenant(tenant);
         // timeout
         job.setTimeoutSeconds(timeoutSeconds != null ? timeoutSeconds : defaultTimeout);
+        job.setDedupKey(dedupKey);
+        if (job.getDedupKey() != null && dedupWindow != null)
+            job.setDedupUntilEpoch(java.time.Instant.now().getEpochSecond() + dedupWindow);
         // parse run_at schedule
         if (runAtSpec != null && !runAtSpec.isBlank()) {
             Long runAtEpoch = parseRunAt(runAtSpec);
@@ -54,8 +74,12 @@ public class EnqueueCommand implements Runnable {
             }
         }
         try {
-            repo.createJob(job);
-            System.out.println("[enqueue] Enqueued job: " + jobId);
+            JobRepository.EnqueueResult result = repo.createJob(job, after);
+            if (result.duplicate())
+                System.out.println("[enqueue] Duplicate of job: " + result.jobId() + " (dedup key " + job.getDedupKey() + ")");
+            else
+                System.out.println("[enqueue] Enqueued job: " + jobId
+                        + (job.getState() == org.example.core.JobState.BLOCKED ? " (blocked on " + new java.util.LinkedHashSet<>(after) + ")" : ""));
         } catch (Exception e) {
             System.err.println("Failed to enqueue job: " + e.getMessage());
         }
@@ -10,7 +10,7 @@ import java.util.List;
 
 @Command(name = "list", description = "List jobs by state.")
 public class ListCommand implements Runnable {
-    @Option(names = "--state", description = "Job state to filter (PENDING, PROCESSING, COMPLETED, FAILED, DEAD)")
+    @Option(names = "--state", description = "Job state to filter (PENDING, BLOCKED, PROCESSING, COMPLETED, FAILED, DEAD)")
     String state;
 
     @Override
@@ -24,7 +24,7 @@ public class ListCommand implements Runnable {
         }
         for (Job j : jobs) {
             System.out.println(j.getId() + "\t" + j.getState() + "\tatt=" + j.getAttempts() + "/" + j.getMaxRetries()
-                    + "\tprio=" + j.getPriority() + "\tcmd='" + j.getCommand() + "'");
+                    + "\tprio=" + j.getPriority() + "\tqueue=" + j.getQueue() + "\ttenant=" + j.getTenant() + "\tcmd='" + j.getCommand() + "'");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package org.example.cli;
+
+import org.example.core.Database;
+import org.example.core.LatencyRecorder;
+import org.example.core.MetricsRollup;
+import org.example.core.UsageRecorder;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.util.List;
+import java.util.Map;
+
+@Command(name = "metrics", description = "Job latency and resource metrics recorded by the workers.", subcommands = {
+        MetricsCommand.Latency.class, MetricsCommand.Usage.class, MetricsCommand.History.class })
+public class MetricsCommand implements Runnable {
+    @Override
+    public void run() {
+        System.out.println("metrics [latency [--minutes N] [--by queue|priority|queue,priority|all] [--queue Q]"
+                + " | usage [--hours N] [--sort cpu|mean_cpu|rss|io|wall|runs] [--queue Q] [--limit N] [--job ID]"
+                + " | history [--metric M] [--minutes N] [--res auto|10s|1m|1h] [--label Q]]");
+    }
+
+    @Command(name = "latency", description = "Queue-wait, execution and total latency percentiles (ms).")
+    static class Latency implements Runnable {
+        @Option(names = "--minutes", description = "Look-back window", defaultValue = "60")
+        long minutes;
+
+        @Option(names = "--by", description = "Group by queue, priority, queue,priority or all", defaultValue = "queue")
+        String by;
+
+        @Option(names = "--queue", description = "Only this queue")
+        String queue;
+
+        @Override
+        public void run() {
+            Database.init();
+            List<Map<String, Object>> rows;
+            try {
+                rows = LatencyRecorder.summaries(
+                        LatencyRecorder.query(System.currentTimeMillis() - minutes * 60_000L, queue, by));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+            if (rows.isEmpty()) {
+                System.out.println("No latency snapshots in the last " + minutes + " minute(s).");
+                System.out.println("(Workers save one per latency_snapshot_seconds, default 60s, and on shutdown.)");
+                return;
+            }
+            System.out.printf("%-16s %-8s %-11s %8s %9s %9s %9s %9s %9s%n", "QUEUE", "PRIORITY", "METRIC", "COUNT",
+                    "P50", "P90", "P99", "P999", "MAX");
+            for (Map<String, Object> row : rows) {
+                for (String metric : LatencyRecorder.METRICS) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> h = (Map<String, Object>) row.get(metric);
+                    System.out.printf("%-16s %-8s %-11s %8s %9s %9s %9s %9s %9s%n",
+                            row.getOrDefault("queue", "*"), row.getOrDefault("priority", "*"), metric, h.get("count"),
+                            h.get("p50"), h.get("p90"), h.get("p99"), h.get("p999"), h.get("max"));
+                }
+            }
+        }
+    }
+
+    @Command(name = "usage", description = "CPU, peak RSS and I/O of shell jobs' process trees, per command template.")
+    static class Usage implements Runnable {
+        @Option(names = "--hours", description = "Look-back window", defaultValue = "24")
+        long hours;
+
+        @Option(names = "--sort", description = "cpu, mean_cpu, rss, io, wall or runs", defaultValue = "cpu")
+        String sort;
+
+        @Option(names = "--queue", description = "Only this queue")
+        String queue;
+
+        @Option(names = "--limit", description = "Templates to show", defaultValue = "20")
+        int limit;
+
+        @Option(names = "--job", description = "Show the recorded attempts of one job instead")
+        String job;
+
+        @Override
+        public void run() {
+            Database.init();
+            if (job != null) {
+                List<UsageRecorder.Run> runs = UsageRecorder.forJob(job);
+                if (runs.isEmpty()) {
+                    System.out.println("No usage recorded for job " + job + ".");
+                    return;
+                }
+                System.out.printf("%-24s %5s %9s %9s %10s %11s %11s %5s%n", "FINISHED", "EXIT", "WALL_MS", "CPU_MS",
+                        "PEAK_RSS", "READ", "WRITTEN", "PROCS");
+                for (UsageRecorder.Run r : runs)
+                    System.out.printf("%-24s %5d %9d %9d %10s %11s %11s %5d%n",
+                            java.time.Instant.ofEpochMilli(r.finishedMs()), r.exitCode(), r.wallMs(), r.cpuMs(),
+                            bytes(r.peakRssKb() * 1024), bytes(r.readBytes()), bytes(r.writeBytes()), r.processes());
+                return;
+            }
+            List<UsageRecorder.TemplateUsage> rows;
+            try {
+                rows = UsageRecorder.byTemplate(System.currentTimeMillis() - hours * 3_600_000L, queue, sort, limit);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+            if (rows.isEmpty()) {
+                System.out.println("No job usage recorded in the last " + hours + " hour(s).");
+                System.out.println("(Only shell jobs on Linux are measured; workers save every "
+                        + UsageRecorder.FLUSH_SECONDS + "s and on shutdown.)");
+                return;
+            }
+            System.out.printf("%6s %5s %10s %8s %10s %10s %10s %10s  %s%n", "RUNS", "FAIL", "CPU_S", "MEAN_MS",
+                    "MAX_RSS", "MEAN_RSS", "READ", "WRITTEN", "TEMPLATE");
+            for (UsageRecorder.TemplateUsage r : rows)
+                System.out.printf("%6d %5d %10.1f %8.0f %10s %10s %10s %10s  %s%n", r.runs(), r.failures(),
+                        r.cpuMs() / 1000.0, r.meanCpuMs(), bytes(r.maxRssKb() * 1024), bytes((long) r.meanRssKb() * 1024),
+                        bytes(r.readBytes()), bytes(r.writeBytes()), r.template());
+        }
+
+        private static String bytes(long n) {
+            if (n < 1024)
+                return n + "B";
+            String units = "KMGTPE";
+            int u = (63 - Long.numberOfLeadingZeros(n)) / 10;
+            return String.format("%.1f%sB", n / (double) (1L << (10 * u)), units.charAt(u - 1));
+        }
+    }
+
+    @Command(name = "history", description = "Downsampled history of worker samples and job completions.")
+    static class History implements Runnable {
+        @Option(names = "--metric", description = "cpu_load, heap_used_bytes, jobs_completed, jobs_failed, jobs_timed_out or job_duration_ms", defaultValue = "jobs_completed")
+        String metric;
+
+        @Option(names = "--minutes", description = "Look-back window", defaultValue = "60")
+        long minutes;
+
+        @Option(names = "--res", description = "auto, 10s, 1m or 1h", defaultValue = "auto")
+        String res;
+
+        @Option(names = "--label", description = "Only this label (the queue, for job series)")
+        String label;
+
+        @Override
+        public void run() {
+            Database.init();
+            List<MetricsRollup.Point> points;
+            int seconds;
+            try {
+                seconds = "auto".equals(res) ? MetricsRollup.resolutionFor(minutes * 60_000L)
+                        : MetricsRollup.parseResolution(res);
+                points = MetricsRollup.query(metric, label, seconds, System.currentTimeMillis() - minutes * 60_000L);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+            if (points.isEmpty()) {
+                System.out.println("No " + metric + " history in the last " + minutes + " minute(s).");
+                return;
+            }
+            System.out.println(metric + " at " + seconds + "s resolution");
+            System.out.printf("%-20s %10s %12s %12s %12s%n", "BUCKET", "COUNT", "MEAN", "MIN", "MAX");
+            for (MetricsRollup.Point p : points)
+                System.out.printf("%-20s %10d %12.3f %12.3f %12.3f%n",
+                        java.time.Instant.ofEpochMilli(p.bucketMs()).toString().replace("T", " ").replace("Z", ""),
+                        p.count(), p.mean(), p.min(), p.max());
+        }
+    }
+}
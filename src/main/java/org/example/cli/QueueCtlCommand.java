@@ -9,6 +9,10 @@ import picocli.CommandLine.Command;
         ListCommand.class,
         DlqCommand.class,
         ConfigCommand.class,
+        ScheduleCommand.class,
+        MetricsCommand.class,
+        DiagCommand.class,
+        BenchCommand.class,
         WebServerCommand.class
 })
 public class QueueCtlCommand implements Runnable {
@@ -0,0 +1,142 @@
+package org.example.cli;
+
+import org.example.core.Database;
+import org.example.core.Schedule;
+import org.example.core.ScheduleRepository;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.time.Instant;
+
+@Command(name = "schedule", description = "Recurring jobs (cron or fixed interval), run by worker processes.", subcommands = {
+        ScheduleCommand.Add.class, ScheduleCommand.Ls.class, ScheduleCommand.Remove.class,
+        ScheduleCommand.Pause.class, ScheduleCommand.Resume.class })
+public class ScheduleCommand implements Runnable {
+    @Override
+    public void run() {
+        System.out.println("schedule [add <name> (--cron EXPR | --every 5m) --command CMD | list | remove <name> | pause <name> | resume <name>]");
+    }
+
+    @Command(name = "add", description = "Create or replace a schedule.")
+    static class Add implements Runnable {
+        @Parameters(index = "0", description = "Schedule name (also the prefix of generated job IDs)")
+        String name;
+
+        @Option(names = "--cron", description = "5-field cron expression, e.g. '*/5 * * * *' or @daily (local time)")
+        String cron;
+
+        @Option(names = "--every", description = "Fixed interval, e.g. 30s, 5m, 2h, 1d")
+        String every;
+
+        @Option(names = "--command", required = true, description = "Command to run")
+        String command;
+
+        @Option(names = "--queue", description = "Queue name (default: default)")
+        String queue;
+
+        @Option(names = "--tenant", description = "Owner/tenant for fair scheduling (default: default)")
+        String tenant;
+
+        @Option(names = "--priority", description = "Job priority (default: priority_default)")
+        Integer priority;
+
+        @Option(names = "--max_retries", description = "Maximum retries (default: max_retries)")
+        Integer maxRetries;
+
+        @Option(names = "--timeout", description = "Timeout seconds (default: timeout_default)")
+        Integer timeoutSeconds;
+
+        @Option(names = "--misfire", defaultValue = Schedule.MISFIRE_FIRE_ONCE, description = "Missed runs: fire_once (default) or skip")
+        String misfire;
+
+        @Option(names = "--allow-overlap", description = "Fire even if the previous run has not finished")
+        boolean allowOverlap;
+
+        @Override
+        public void run() {
+            if ((cron == null) == (every == null)) {
+                System.err.println("Specify exactly one of --cron or --every");
+                return;
+            }
+            if (!misfire.equalsIgnoreCase(Schedule.MISFIRE_FIRE_ONCE) && !misfire.equalsIgnoreCase(Schedule.MISFIRE_SKIP)) {
+                System.err.println("--misfire must be fire_once or skip");
+                return;
+            }
+            String spec = cron != null ? cron : "@every " + every;
+            long next;
+            try {
+                next = Schedule.nextAfter(spec, Instant.now().getEpochSecond());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid schedule: " + e.getMessage());
+                return;
+            }
+            if (next < 0) {
+                System.err.println("Schedule never fires: " + spec);
+                return;
+            }
+            Database.init();
+            new ScheduleRepository().upsert(new Schedule(name, spec, command,
+                    queue == null || queue.isBlank() ? org.example.core.Job.DEFAULT_QUEUE : queue,
+                    tenant == null || tenant.isBlank() ? org.example.core.Job.DEFAULT_TENANT : tenant,
+                    priority, maxRetries, timeoutSeconds, misfire.toLowerCase(), allowOverlap, true, next, null, null));
+            System.out.println("[schedule] " + name + " (" + spec + ") next run " + Instant.ofEpochSecond(next));
+        }
+    }
+
+    @Command(name = "list", description = "List schedules.")
+    static class Ls implements Runnable {
+        @Override
+        public void run() {
+            Database.init();
+            java.util.List<Schedule> all = new ScheduleRepository().list(false);
+            if (all.isEmpty()) {
+                System.out.println("No schedules");
+                return;
+            }
+            for (Schedule s : all) {
+                System.out.println(s.name() + "\t" + (s.enabled() ? "enabled" : "paused") + "\tspec='" + s.spec()
+                        + "'\tnext=" + (s.nextFireAt() < 0 ? "never" : Instant.ofEpochSecond(s.nextFireAt()))
+                        + "\tlast_job=" + (s.lastJobId() == null ? "" : s.lastJobId())
+                        + "\tmisfire=" + s.misfire() + (s.allowOverlap() ? "\toverlap" : "")
+                        + "\tqueue=" + s.queue() + "\tcmd='" + s.command() + "'");
+            }
+        }
+    }
+
+    @Command(name = "remove", description = "Delete a schedule (jobs already created are kept).")
+    static class Remove implements Runnable {
+        @Parameters(index = "0", description = "Schedule name")
+        String name;
+
+        @Override
+        public void run() {
+            Database.init();
+            System.out.println(new ScheduleRepository().remove(name) ? "Removed schedule: " + name : "No such schedule: " + name);
+        }
+    }
+
+    @Command(name = "pause", description = "Stop firing a schedule until resumed.")
+    static class Pause implements Runnable {
+        @Parameters(index = "0", description = "Schedule name")
+        String name;
+
+        @Override
+        public void run() {
+            Database.init();
+            System.out.println(new ScheduleRepository().setEnabled(name, false) ? "Paused schedule: " + name : "No such schedule: " + name);
+        }
+    }
+
+    @Command(name = "resume", description = "Resume a paused schedule (missed runs follow its misfire policy).")
+    static class Resume implements Runnable {
+        @Parameters(index = "0", description = "Schedule name")
+        String name;
+
+        @Override
+        public void run() {
+            Database.init();
+            System.out.println(new ScheduleRepository().setEnabled(name, true) ? "Resumed schedule: " + name : "No such schedule: " + name);
+        }
+    }
+}
@@ -2,13 +2,18 @@ package org.example.cli;
 
 import org.example.core.Database;
 import org.example.core.JobRepository;
+import org.example.core.QueueRates;
 import org.example.core.WorkerRegistry;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 
 import java.util.Map;
 
 @Command(name = "status", description = "Show summary of all job states & workers (busy and idle).")
 public class StatusCommand implements Runnable {
+    @Option(names = "--detail", description = "Also show arrival/service rates, drain-time estimates and capacity per queue and priority")
+    boolean detail;
+
     @Override
     public void run() {
         Database.init();
@@ -16,6 +21,7 @@ public class StatusCommand implements Runnable {
         Map<String, Integer> m = repo.stateCounts();
         System.out.println("Jobs:");
         System.out.println("  PENDING    : " + m.getOrDefault("PENDING", 0));
+        System.out.println("  BLOCKED    : " + m.getOrDefault("BLOCKED", 0));
         System.out.println("  PROCESSING : " + m.getOrDefault("PROCESSING", 0));
         System.out.println("  COMPLETED  : " + m.getOrDefault("COMPLETED", 0));
         System.out.println("  FAILED     : " + m.getOrDefault("FAILED", 0));
@@ -27,5 +33,43 @@ public class StatusCommand implements Runnable {
         System.out.println("  IDLE : " + counts.idle());
         System.out.println("  BUSY : " + counts.busy());
         System.out.println("  (Use 'queuectl list --state PROCESSING' to see busy jobs)");
+        if (detail)
+            printForecast(QueueRates.forecast(counts.idle() + counts.busy()));
+    }
+
+    private static void printForecast(QueueRates.Forecast f) {
+        System.out.println("Flow (EWMA over " + f.windowSeconds() + "s, " + f.workers() + " worker(s)):");
+        if (f.rows().isEmpty()) {
+            System.out.println("  no backlog and no recent traffic");
+            return;
+        }
+        System.out.printf("  %-16s %5s %8s %9s %9s %8s %10s%n", "QUEUE", "PRI", "PENDING", "IN/s", "OUT/s", "SVC_S",
+                "DRAIN");
+        for (QueueRates.Row r : f.rows())
+            System.out.printf("  %-16s %5d %8d %9.2f %9.2f %8.2f %10s%n", r.queue(), r.priority(), r.pending(),
+                    r.arrivalPerSec(), r.servicePerSec(), r.meanServiceSeconds(),
+                    r.drainSeconds() != null ? duration(r.drainSeconds()) : "growing");
+        for (QueueRates.QueueCapacity q : f.queues())
+            if (q.overCapacity())
+                System.out.printf("  ! queue %s: arrivals %.2f/s exceed capacity %.2f/s (limited by %s)%n", q.queue(),
+                        q.arrivalPerSec(), q.capacityPerSec(), q.limit());
+        System.out.printf("Total: in %.2f/s, out %.2f/s, capacity %.2f/s, utilization %.0f%%%n", f.arrivalPerSec(),
+                f.servicePerSec(), f.capacityPerSec(), f.utilization() * 100);
+        if (f.overCapacity() && (f.workers() == 0 || f.workersNeeded() > f.workers()))
+            System.out.println("WARNING: arrivals exceed capacity; about " + Math.max(1, f.workersNeeded())
+                    + " worker(s) needed at the current service time, " + f.workers() + " running.");
+        else if (f.overCapacity())
+            System.out.println("WARNING: some queues receive more than their limits let workers serve (see '!' above).");
+    }
+
+    private static String duration(double seconds) {
+        long s = Math.round(seconds);
+        if (s < 60)
+            return s + "s";
+        if (s < 3600)
+            return (s / 60) + "m" + (s % 60) + "s";
+        if (s < 86_400)
+            return (s / 3600) + "h" + (s % 3600 / 60) + "m";
+        return (s / 86_400) + "d" + (s % 86_400 / 3600) + "h";
     }
 }
\ No newline at end of file
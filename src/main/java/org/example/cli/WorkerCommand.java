@@ -4,12 +4,13 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import org.example.core.Database;
 import org.example.core.JobRepository;
-import org.example.core.Worker;
+import org.example.core.Autoscaler;
+import org.example.core.ProcessSupervisor;
+import org.example.core.WorkerPool;
 import org.example.core.ConfigRepository;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 import java.nio.file.Paths;
 
 @Command(name = "worker", description = "Worker management.", subcommands = { WorkerCommand.Start.class,
@@ -25,6 +26,27 @@ public class WorkerCommand implements Runnable {
         @Option(names = "--count", description = "Number of workers to start", defaultValue = "1")
         int count;
 
+        @Option(names = "--queues", split = ",", description = "Queues to consume, comma separated (default: all)")
+        List<String> queues;
+
+        @Option(names = "--autoscale", description = "Size the pool between --min and --max from backlog, queue wait and host CPU")
+        boolean autoscale;
+
+        @Option(names = "--min", description = "Autoscale: minimum workers", defaultValue = "1")
+        int min;
+
+        @Option(names = "--max", description = "Autoscale: maximum workers", defaultValue = "8")
+        int max;
+
+        @Option(names = "--processes", description = "Worker JVMs to run under a local supervisor (each with the other options)", defaultValue = "1")
+        int processes;
+
+        @Option(names = "--metrics-port", description = "Serve Prometheus /metrics from this JVM on this port (with --processes, shard N uses port+N)", defaultValue = "0")
+        int metricsPort;
+
+        @Option(names = "--jfr", description = "Record JDK Flight Recorder events (claims, spawns, exits, DB commits, retries) to this file; with --processes, shard N writes NAME-N.jfr")
+        String jfr;
+
         @Option(names = { "-d", "--detached" }, description = "Run workers in detached/background mode")
         boolean detached;
 
@@ -42,6 +64,7 @@ public class WorkerCommand implements Runnable {
             ConfigRepository cfg = new ConfigRepository();
             int backoff = cfg.getInt("backoff_base", 2);
             JobRepository repo = new JobRepository(backoff);
+            repo.setLeaseSeconds(cfg.getInt("lease_seconds", JobRepository.DEFAULT_LEASE_SECONDS));
 
             if (detached) {
                 // try to re-launch same jar in background using nohup and capture pid
@@ -54,8 +77,8 @@ public class WorkerCommand implements Runnable {
                     // Preserve current user.home to keep DB/logs consistent when the demo overrides
                     // it
                     String cmd = String.format(
-                            "nohup java -Duser.home='%s' -jar '%s' worker start --count %d > %s 2>&1 & echo $!",
-                            userHome, jar, count, logsOut);
+                            "nohup java -Duser.home='%s' -jar '%s' worker start %s > %s 2>&1 & echo $!",
+                            userHome, jar, shellJoin(withMonitoring(startArgs(processes, count, queues, autoscale, min, max))), logsOut);
                     ProcessBuilder pb = new ProcessBuilder("/bin/sh", "-c", cmd);
                     Process p = pb.start();
                     try (java.io.BufferedReader r = new java.io.BufferedReader(
@@ -69,15 +92,81 @@ public class WorkerCommand implements Runnable {
                 return;
             }
 
-            List<Thread> threads = new ArrayList<>();
-            List<Worker> workers = new ArrayList<>();
-            for (int i = 0; i < count; i++) {
-                String wid = "worker-" + UUID.randomUUID().toString().substring(0, 8);
-                Worker w = new Worker(wid, repo, !follow);
-                Thread t = Thread.ofVirtual().name(wid).start(w);
-                threads.add(t);
-                workers.add(w);
-                System.out.println("Started " + wid);
+            if (processes > 1) {
+                // supervisor mode: this JVM only forks and babysits the shard JVMs
+                ProcessSupervisor supervisor = new ProcessSupervisor(processes,
+                        startArgs(1, count, queues, autoscale, min, max));
+                supervisor.setMetricsPort(metricsPort);
+                if (jfr != null)
+                    supervisor.setJfrFile(Paths.get(jfr).toAbsolutePath());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    System.out.println("Shutdown requested, stopping shards...");
+                    supervisor.shutdown(java.time.Duration.ofSeconds(10));
+                }));
+                supervisor.run();
+                return;
+            }
+
+            // flight recording of this JVM; JobEvents cost next to nothing without one
+            jdk.jfr.Recording recording = null;
+            if (jfr != null) {
+                try {
+                    recording = new jdk.jfr.Recording(jdk.jfr.Configuration.getConfiguration("default"));
+                    recording.setName("queuectl-worker");
+                    recording.setDestination(Paths.get(jfr).toAbsolutePath());
+                    recording.start();
+                    System.out.println("Flight recording to " + Paths.get(jfr).toAbsolutePath());
+                } catch (Exception e) {
+                    System.err.println("Failed to start flight recording " + jfr + ": " + e.getMessage());
+                    recording = null;
+                }
+            }
+            jdk.jfr.Recording flight = recording;
+
+            // apply config changes (e.g. backoff_base) to running workers without a restart
+            ConfigRepository.addListener(values -> {
+                repo.setBackoffBase(cfg.getInt("backoff_base", 2));
+                repo.setLeaseSeconds(cfg.getInt("lease_seconds", JobRepository.DEFAULT_LEASE_SECONDS));
+            });
+            ConfigRepository.startWatcher();
+
+            // reclaim jobs orphaned by crashed workers (any process sharing this DB)
+            org.example.core.LeaseReaper reaper = new org.example.core.LeaseReaper(repo);
+            Thread reaperThread = new Thread(reaper, "lease-reaper");
+            reaperThread.setDaemon(true);
+            reaperThread.start();
+
+            // recurring schedules; every worker JVM runs one, fires are deduplicated in the DB
+            org.example.core.Scheduler scheduler = new org.example.core.Scheduler(repo);
+            Thread schedulerThread = new Thread(scheduler, "scheduler");
+            schedulerThread.setDaemon(true);
+            schedulerThread.start();
+
+            // per-statement DB timings, published for 'queuectl diag db'
+            org.example.core.DbStats.startPublisher();
+
+            // queue-wait/execution histograms (snapshotted once a minute), CPU/RSS/IO of each
+            // shell job's process tree, and the 10s/1m/1h history behind the dashboard's long ranges
+            java.util.List<org.example.core.JobRecorder> recorders = java.util.List.of(
+                    org.example.core.JobRecorder.start(new org.example.core.LatencyRecorder()),
+                    org.example.core.JobRecorder.start(new org.example.core.UsageRecorder()),
+                    org.example.core.JobRecorder.start(new org.example.core.MetricsRollup()));
+
+            WorkerPool pool = new WorkerPool(repo, !follow, queues);
+            Autoscaler autoscaler = autoscale ? new Autoscaler(pool, repo, queues, min, max) : null;
+            if (metricsPort > 0) {
+                try {
+                    org.example.core.MetricsExporter.registerDatabaseGauges(repo);
+                    org.example.core.MetricsExporter.registerPoolGauges(pool);
+                    org.example.core.MetricsExporter.start(metricsPort);
+                    System.out.println("Metrics exporter on http://localhost:" + metricsPort + "/metrics");
+                } catch (Exception e) {
+                    System.err.println("Failed to start metrics exporter on port " + metricsPort + ": " + e.getMessage());
+                }
+            }
+            if (autoscaler == null) {
+                for (int i = 0; i < count; i++)
+                    pool.add();
             }
 
             Thread logTailerThread = null;
@@ -92,26 +181,48 @@ public class WorkerCommand implements Runnable {
 
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("Shutdown requested, stopping workers...");
-                for (Worker w : workers)
-                    w.stop();
-                for (Thread t : threads) {
+                if (autoscaler != null)
+                    autoscaler.requestStop();
+                pool.stopAll();
+                try {
+                    pool.joinAll(5000);
+                } catch (InterruptedException ignored) {
+                }
+                java.util.Map<String, Long> throttled = org.example.core.QueueRateLimiter.throttledCounts();
+                if (!throttled.isEmpty())
+                    System.out.println("Throttled claims by queue: " + throttled);
+                java.util.Map<String, String> pools = org.example.core.ProcessPool.stats();
+                if (!pools.isEmpty())
+                    System.out.println("Process pools: " + pools);
+                org.example.core.ProcessPool.shutdownAll();
+                recorders.forEach(org.example.core.JobRecorder::stop);
+                if (flight != null) {
                     try {
-                        t.join(5000);
-                    } catch (InterruptedException ignored) {
+                        // stop() writes the recording to its destination; JFR's own exit hook
+                        // may already have done that
+                        if (flight.getState() == jdk.jfr.RecordingState.RUNNING)
+                            flight.stop();
+                        flight.close();
+                    } catch (Exception e) {
+                        System.err.println("Failed to write flight recording: " + e.getMessage());
                     }
                 }
             }));
 
-            // block main thread until interrupted
+            // block main thread until interrupted; in autoscale mode the supervisor loop
+            // runs here until a stop is requested, then remaining workers drain
             try {
-                for (Thread t : threads)
-                    t.join();
+                if (autoscaler != null)
+                    autoscaler.run();
+                pool.joinAll(0);
             } catch (InterruptedException e) {
                 System.out.println("Interrupted, stopping workers...");
-                for (Worker w : workers)
-                    w.stop();
+                pool.stopAll();
             }
 
+            reaper.requestStop();
+            reaperThread.interrupt();
+
             // stop tailer if running
             if (tailer != null)
                 tailer.requestStop();
@@ -122,6 +233,40 @@ public class WorkerCommand implements Runnable {
                 }
             }
         }
+
+        private List<String> withMonitoring(List<String> args) {
+            if (metricsPort > 0)
+                args.addAll(List.of("--metrics-port", Integer.toString(metricsPort)));
+            if (jfr != null)
+                args.addAll(List.of("--jfr", Paths.get(jfr).toAbsolutePath().toString()));
+            return args;
+        }
+    }
+
+    /** {@code worker start} arguments, shared by detached launches and the daemon/unit files. */
+    static List<String> startArgs(int processes, int count, List<String> queues, boolean autoscale, int min,
+            int max) {
+        List<String> args = new ArrayList<>();
+        if (processes > 1)
+            args.addAll(List.of("--processes", Integer.toString(processes)));
+        if (autoscale) {
+            args.addAll(List.of("--autoscale", "--min", Integer.toString(min), "--max", Integer.toString(max)));
+        } else {
+            args.addAll(List.of("--count", Integer.toString(count)));
+        }
+        if (queues != null && !queues.isEmpty())
+            args.addAll(List.of("--queues", String.join(",", queues)));
+        return args;
+    }
+
+    static String shellJoin(List<String> args) {
+        StringBuilder sb = new StringBuilder();
+        for (String a : args) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append('\'').append(a.replace("'", "'\\''")).append('\'');
+        }
+        return sb.toString();
     }
 
     @Command(name = "stop", description = "Stop running workers gracefully.")
@@ -138,6 +283,16 @@ public class WorkerCommand implements Runnable {
     static class Daemon implements Runnable {
         @Option(names = "--count", description = "Workers to start when starting daemon", defaultValue = "2")
         int count;
+        @Option(names = "--processes", description = "Worker JVMs the daemon supervises", defaultValue = "1")
+        int processes;
+        @Option(names = "--queues", split = ",", description = "Queues the daemon consumes (default: all)")
+        List<String> queues;
+        @Option(names = "--autoscale", description = "Run the daemon in autoscale mode between --min and --max")
+        boolean autoscale;
+        @Option(names = "--min", description = "Autoscale: minimum workers", defaultValue = "1")
+        int min;
+        @Option(names = "--max", description = "Autoscale: maximum workers", defaultValue = "8")
+        int max;
         @Option(names = "--start", description = "Start the daemon")
         boolean start;
         @Option(names = "--stop", description = "Stop the daemon")
@@ -151,11 +306,11 @@ public class WorkerCommand implements Runnable {
         public void run() {
             Database.init();
             if (installUnits) {
-                org.example.core.DaemonManager.installUnitTemplates();
+                org.example.core.DaemonManager.installUnitTemplates(startArgs(processes, count, queues, autoscale, min, max));
                 return;
             }
             if (start) {
-                org.example.core.DaemonManager.startDaemon(count);
+                org.example.core.DaemonManager.startDaemon(startArgs(processes, count, queues, autoscale, min, max));
             } else if (stop) {
                 org.example.core.DaemonManager.stopDaemon();
             } else if (status) {
@@ -0,0 +1,103 @@
+package org.example.core;
+
+import java.util.List;
+
+/**
+ * Supervisor loop that sizes a {@link WorkerPool} between min and max from the
+ * ready backlog, the oldest ready job's wait and host CPU load.
+ * <ul>
+ * <li>Grow when ready jobs outnumber idle workers and either the oldest has
+ * waited {@code autoscale.target_wait_seconds} or nobody is idle, for two
+ * consecutive ticks, and host CPU is below {@code autoscale.cpu_high}. Growth
+ * is at most doubling per tick.</li>
+ * <li>Shrink when nothing is ready and workers sit idle for
+ * {@code autoscale.idle_ticks} consecutive ticks; half the idle workers are
+ * drained per step.</li>
+ * </ul>
+ * The separate up/down streaks give hysteresis so a bursty queue does not flap.
+ */
+public class Autoscaler implements Runnable {
+    private static final int UP_TICKS = 2;
+
+    private final WorkerPool pool;
+    private final JobRepository repo;
+    private final List<String> queues;
+    private final int min;
+    private final int max;
+    private final ConfigRepository config = new ConfigRepository();
+    private volatile boolean stop;
+    private int upStreak;
+    private int downStreak;
+
+    public Autoscaler(WorkerPool pool, JobRepository repo, List<String> queues, int min, int max) {
+        this.pool = pool;
+        this.repo = repo;
+        this.queues = queues;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+    }
+
+    public void requestStop() {
+        stop = true;
+    }
+
+    @Override
+    public void run() {
+        for (int i = pool.size(); i < min; i++)
+            pool.add();
+        while (!stop && !Database.isStopRequested()) {
+            try {
+                Thread.sleep(Math.max(1, config.getInt("autoscale.interval_seconds", 5)) * 1000L);
+                tick();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Autoscaler error: " + e.getMessage());
+            }
+        }
+    }
+
+    void tick() {
+        int size = pool.size();
+        int idle = size - pool.busyCount();
+        JobRepository.Backlog backlog = repo.backlog(queues);
+        double cpu = WorkerPerf.hostCpuLoad();
+        int targetWait = config.getInt("autoscale.target_wait_seconds", 5);
+        double cpuHigh = parseDouble(config.get("autoscale.cpu_high", "0.85"), 0.85);
+        int idleTicks = Math.max(1, config.getInt("autoscale.idle_ticks", 6));
+
+        boolean wantUp = backlog.ready() > idle
+                && (backlog.oldestWaitSeconds() >= targetWait || idle == 0)
+                && (cpu < 0 || cpu < cpuHigh);
+        boolean wantDown = backlog.ready() == 0 && idle > 0;
+        upStreak = wantUp ? upStreak + 1 : 0;
+        downStreak = wantDown ? downStreak + 1 : 0;
+
+        if (upStreak >= UP_TICKS && size < max) {
+            int add = Math.min(max - size, Math.min(Math.max(1, size), backlog.ready() - idle));
+            for (int i = 0; i < add; i++)
+                pool.add();
+            log(size, size + add, backlog, cpu);
+            upStreak = 0;
+        } else if (downStreak >= idleTicks && size > min) {
+            int retired = pool.retireIdle(Math.min(size - min, Math.max(1, idle / 2)));
+            if (retired > 0)
+                log(size, size - retired, backlog, cpu);
+            downStreak = 0;
+        }
+    }
+
+    private void log(int from, int to, JobRepository.Backlog b, double cpu) {
+        System.out.printf("[autoscale] %d -> %d workers (ready=%d, oldest wait=%ds, host cpu=%.2f)%n",
+                from, to, b.ready(), b.oldestWaitSeconds(), cpu);
+    }
+
+    private static double parseDouble(String v, double def) {
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (Exception e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.core;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several short shell jobs run in one {@code /bin/sh -c} session. Each job runs
+ * in its own subshell between begin/end marker lines carrying a per-batch nonce,
+ * so its output and exit status are captured separately and an {@code exit} or
+ * failure in one job does not affect the rest. The reader tracks which job is
+ * running so the worker can apply each job's own timeout.
+ */
+class BatchExecution {
+    private final List<Job> jobs;
+    private final String begin;
+    private final String end;
+    private final Process process;
+    private final Thread reader;
+    private final List<StringBuilder> outputs = new ArrayList<>();
+    private final Integer[] exitCodes;
+    // index of the job currently running (-1 before the first begin marker) and when it began
+    private volatile int current = -1;
+    private volatile long currentStartMs;
+
+    BatchExecution(List<Job> jobs) throws Exception {
+        this.jobs = jobs;
+        this.exitCodes = new Integer[jobs.size()];
+        String nonce = UUID.randomUUID().toString().replace("-", "");
+        this.begin = "::queuectl-" + nonce + "-begin ";
+        this.end = "::queuectl-" + nonce + "-end ";
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < jobs.size(); i++) {
+            outputs.add(new StringBuilder());
+            script.append("printf '%s\\n' '").append(begin).append(i).append("'\n");
+            // newline before ')' so a trailing comment in the command can't swallow it
+            script.append("(\n").append(jobs.get(i).getCommand()).append("\n)\n");
+            script.append("printf '\\n%s%d\\n' '").append(end).append(i).append(" ' \"$?\"\n");
+        }
+        ProcessBuilder pb = new ProcessBuilder("/bin/sh", "-c", script.toString());
+        pb.redirectErrorStream(true);
+        process = pb.start();
+        reader = Thread.ofVirtual().name("batch-reader").start(this::read);
+    }
+
+    /** Plain shell commands only: handlers and pooled templates have their own fast paths. */
+    static boolean isBatchable(Job job) {
+        String cmd = job.getCommand();
+        return !JobHandlers.isHandlerCommand(cmd) && !ProcessPool.isPooled(cmd);
+    }
+
+    private void read() {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith(begin)) {
+                    currentStartMs = System.currentTimeMillis();
+                    current = Integer.parseInt(line.substring(begin.length()).trim());
+                } else if (line.startsWith(end)) {
+                    String[] parts = line.substring(end.length()).trim().split(" ");
+                    int idx = Integer.parseInt(parts[0]);
+                    StringBuilder out = outputs.get(idx);
+                    synchronized (out) {
+                        // the end marker starts with a newline so unterminated output stays separate
+                        if (out.length() > 0 && out.charAt(out.length() - 1) == '\n'
+                                && (out.length() == 1 || out.charAt(out.length() - 2) == '\n'))
+                            out.setLength(out.length() - 1);
+                    }
+                    exitCodes[idx] = Integer.parseInt(parts[1]);
+                } else if (current >= 0) {
+                    StringBuilder out = outputs.get(current);
+                    synchronized (out) {
+                        out.append(line).append('\n');
+                    }
+                }
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** @return true once the whole batch has finished (or been killed) */
+    boolean waitFor(long timeoutMs) throws InterruptedException {
+        if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS))
+            return false;
+        // joining the reader also publishes the exit codes it recorded
+        reader.join(1000);
+        return true;
+    }
+
+    /** Index of the job that has started but not finished, or -1. */
+    int running() {
+        int i = current;
+        return i >= 0 && exitCodes[i] == null ? i : -1;
+    }
+
+    long runningSinceMs() {
+        return currentStartMs;
+    }
+
+    /** Kill the session and every job process under it. */
+    void kill() {
+        // list the tree before sh dies (its children are reparented then), but kill sh
+        // first so it can't move on to the next command when its child is killed
+        List<ProcessHandle> tree = process.descendants().toList();
+        process.destroyForcibly();
+        tree.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    Job job(int i) {
+        return jobs.get(i);
+    }
+
+    int size() {
+        return jobs.size();
+    }
+
+    /** Exit code of job {@code i}, or null if it never finished. */
+    Integer exitCode(int i) {
+        return exitCodes[i];
+    }
+
+    /** True if job {@code i} began running (finished or not). */
+    boolean started(int i) {
+        return i <= current;
+    }
+
+    String output(int i) {
+        StringBuilder out = outputs.get(i);
+        synchronized (out) {
+            return out.toString();
+        }
+    }
+}
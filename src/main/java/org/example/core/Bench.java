@@ -0,0 +1,552 @@
+package org.example.core;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end load generator behind {@code queuectl bench}: enqueues a synthetic
+ * workload, runs a {@link WorkerPool} in this JVM against the same (isolated)
+ * database, and measures every job through {@link JobListener} callbacks.
+ * Latencies are recorded in microseconds from {@link System#nanoTime()}:
+ * <ul>
+ * <li>queue wait – enqueue call to claim</li>
+ * <li>service – claim to result stored</li>
+ * <li>end to end – enqueue call to result stored</li>
+ * </ul>
+ * With {@code processes > 0} the workers run in that many child JVMs instead
+ * (see {@link #runChild}), all claiming from the one SQLite file. Each child logs
+ * every claim; the parent merges the logs to report claim throughput, claim-call
+ * latency, busy retries, lock-wait time and {@code SQLITE_BUSY} timeouts, and checks that every job was claimed
+ * exactly once and none was lost. Timestamps are then epoch microseconds so they
+ * compare across processes.
+ * The caller must point {@code user.home} at a scratch directory before anything
+ * touches {@link Database}.
+ */
+public class Bench {
+    public static final List<String> WORKLOADS = List.of("noop", "sleep", "cpu", "output");
+
+    /**
+     * Run parameters. {@code rate <= 0} enqueues everything up front (burst);
+     * {@code processes > 0} runs {@code workers} workers in each of that many JVMs.
+     */
+    public record Options(int jobs, int workers, int processes, double rate, List<String> workloads, boolean shell,
+            int sleepMs, int cpuRounds, int outputLines, long timeoutSeconds) {
+    }
+
+    private static final String CLAIM_LOG_PREFIX = "claims-";
+    private static final String CHILD_STATS_PREFIX = "child-";
+
+    private final Options opt;
+    private final Map<String, Long> enqueuedAt = new ConcurrentHashMap<>();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram service = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram enqueueCall = new LatencyHistogram();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong lastFinish = new AtomicLong();
+
+    public Bench(Options opt) {
+        this.opt = opt;
+    }
+
+    /** Microsecond clock: monotonic in one JVM, wall clock across processes. */
+    private long now() {
+        if (opt.processes() > 0) {
+            Instant t = Instant.now();
+            return t.getEpochSecond() * 1_000_000L + t.getNano() / 1000;
+        }
+        return System.nanoTime() / 1000;
+    }
+
+    /** Command for the i-th job: workloads are interleaved round-robin. */
+    String command(int i) {
+        String w = opt.workloads().get(i % opt.workloads().size());
+        if (opt.shell()) {
+            return switch (w) {
+                case "sleep" -> "sleep " + (opt.sleepMs() / 1000.0);
+                case "cpu" -> "i=0; while [ $i -lt " + opt.cpuRounds() / 100 + " ]; do i=$((i+1)); done";
+                case "output" -> "yes 'queuectl bench output line' | head -n " + opt.outputLines();
+                default -> "true";
+            };
+        }
+        return switch (w) {
+            case "sleep" -> "java:sleep?ms=" + opt.sleepMs();
+            case "cpu" -> "java:cpu?rounds=" + opt.cpuRounds();
+            case "output" -> "java:echo?text=" + URLEncoder.encode("queuectl bench output line", StandardCharsets.UTF_8)
+                    + "&repeat=" + opt.outputLines();
+            default -> "java:noop";
+        };
+    }
+
+    public Map<String, Object> run() throws InterruptedException {
+        Database.init();
+        JobRepository repo = new JobRepository(2);
+        return opt.processes() > 0 ? runProcesses(repo) : runInProcess(repo);
+    }
+
+    private Map<String, Object> runInProcess(JobRepository repo) throws InterruptedException {
+        Worker.addListener(new JobListener() {
+            @Override
+            public void onFinish(Job job, int exitCode, long claimedAtMs, long nanos) {
+                long t = now();
+                Long enq = enqueuedAt.get(job.getId());
+                if (enq == null)
+                    return;
+                long start = t - nanos / 1000;
+                queueWait.record(start - enq);
+                service.record(t - start);
+                endToEnd.record(t - enq);
+                if (exitCode != 0)
+                    failed.incrementAndGet();
+                lastFinish.accumulateAndGet(t, Math::max);
+                finished.incrementAndGet();
+            }
+        });
+
+        WorkerPool pool = new WorkerPool(repo, false, null);
+        for (int i = 0; i < opt.workers(); i++)
+            pool.add();
+
+        long t0 = now();
+        enqueue(repo);
+        long enqueueDone = now();
+
+        long deadline = t0 + opt.timeoutSeconds() * 1_000_000L;
+        long nextProgress = now() + 5_000_000L;
+        while (finished.get() < opt.jobs() && now() < deadline) {
+            Thread.sleep(50);
+            if (now() >= nextProgress) {
+                System.out.printf("[bench] %d/%d done%n", finished.get(), opt.jobs());
+                nextProgress += 5_000_000L;
+            }
+        }
+        boolean timedOut = finished.get() < opt.jobs();
+        pool.stopAll();
+        pool.joinAll(5000);
+
+        Map<String, Object> report = header();
+        report.put("results", results(t0, enqueueDone, timedOut));
+        Map<String, Object> lat = new LinkedHashMap<>();
+        lat.put("enqueue_call", enqueueCall.summary(1000));
+        lat.put("queue_wait", queueWait.summary(1000));
+        lat.put("service", service.summary(1000));
+        lat.put("end_to_end", endToEnd.summary(1000));
+        report.put("latency_ms", lat);
+        return report;
+    }
+
+    /**
+     * Multi-process mode: start the child JVMs, enqueue, wait until every job is
+     * COMPLETED or DEAD, then stop the children and verify their claim logs.
+     */
+    private Map<String, Object> runProcesses(JobRepository repo) throws InterruptedException {
+        Path dir = Paths.get(Database.baseDir(), "bench");
+        Path stop = dir.resolve("stop");
+        List<Process> children = new ArrayList<>();
+        try {
+            Files.createDirectories(dir);
+            Files.deleteIfExists(stop);
+            String jar = new File(
+                    org.example.Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+            for (int i = 0; i < opt.processes(); i++) {
+                List<String> cmd = List.of(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-Duser.home=" + System.getProperty("user.home"),
+                        "-jar", jar, "bench", "--child", "--workers", String.valueOf(opt.workers()));
+                File out = Paths.get(Database.baseDir(), "logs", "bench-child-" + i + ".out").toFile();
+                children.add(new ProcessBuilder(cmd)
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(out))
+                        .start());
+            }
+        } catch (Exception e) {
+            children.forEach(Process::destroyForcibly);
+            throw new RuntimeException("Failed to start bench processes", e);
+        }
+
+        long t0 = now();
+        enqueue(repo);
+        long enqueueDone = now();
+
+        long deadline = t0 + opt.timeoutSeconds() * 1_000_000L;
+        long nextProgress = now() + 5_000_000L;
+        int done = 0;
+        while (now() < deadline) {
+            Map<String, Integer> counts = repo.stateCounts();
+            done = counts.getOrDefault("COMPLETED", 0) + counts.getOrDefault("DEAD", 0);
+            if (done >= opt.jobs() || children.stream().noneMatch(Process::isAlive))
+                break;
+            Thread.sleep(200);
+            if (now() >= nextProgress) {
+                System.out.printf("[bench] %d/%d done%n", done, opt.jobs());
+                nextProgress += 5_000_000L;
+            }
+        }
+        boolean timedOut = done < opt.jobs();
+        try {
+            Files.writeString(stop, "");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to signal bench processes", e);
+        }
+        for (Process p : children) {
+            if (!p.waitFor(30, TimeUnit.SECONDS)) {
+                System.err.println("[bench] child pid=" + p.pid() + " did not stop; killing it");
+                p.destroyForcibly();
+            }
+        }
+
+        Map<String, Object> report = header();
+        Map<String, Object> lat = new LinkedHashMap<>();
+        lat.put("enqueue_call", enqueueCall.summary(1000));
+        Map<String, Object> claims = verifyClaims(repo, dir, lat);
+        Map<String, Object> res = results(t0, enqueueDone, timedOut);
+        res.putAll(claims);
+        report.put("results", res);
+        report.put("latency_ms", lat);
+        return report;
+    }
+
+    /**
+     * Merge the children's claim logs and stats. A job claimed more than once is a
+     * duplicate; one that is not COMPLETED, or was never claimed, is lost.
+     */
+    private Map<String, Object> verifyClaims(JobRepository repo, Path dir, Map<String, Object> lat) {
+        LatencyHistogram claimCall = new LatencyHistogram();
+        Map<String, Integer> claimsPerJob = new HashMap<>();
+        List<Long> claimTimes = new ArrayList<>();
+        List<Integer> perProcess = new ArrayList<>();
+        long busy = 0, otherErrors = 0, empty = 0;
+        // the parent's own enqueues wait for the same lock
+        long[] waits = lockWaits();
+        long retries = waits[0];
+        double waitMs = waits[1] / 1000.0;
+        try (var files = Files.list(dir)) {
+            for (Path f : files.sorted().toList()) {
+                String name = f.getFileName().toString();
+                if (name.startsWith(CLAIM_LOG_PREFIX)) {
+                    int n = 0;
+                    for (String line : Files.readAllLines(f)) {
+                        // jobId, claimed at, claim call, finished at, exit code
+                        String[] p = line.split("\t");
+                        if (p.length < 5)
+                            continue;
+                        n++;
+                        String id = p[0];
+                        long claimed = Long.parseLong(p[1]);
+                        long finishedAt = Long.parseLong(p[3]);
+                        if (!"0".equals(p[4]))
+                            failed.incrementAndGet();
+                        finished.incrementAndGet();
+                        claimsPerJob.merge(id, 1, Integer::sum);
+                        claimTimes.add(claimed);
+                        claimCall.record(Long.parseLong(p[2]));
+                        Long enq = enqueuedAt.get(id);
+                        if (enq != null) {
+                            queueWait.record(claimed - enq);
+                            service.record(finishedAt - claimed);
+                            endToEnd.record(finishedAt - enq);
+                        }
+                        lastFinish.accumulateAndGet(finishedAt, Math::max);
+                    }
+                    perProcess.add(n);
+                } else if (name.startsWith(CHILD_STATS_PREFIX)) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Double> st = new Gson().fromJson(Files.readString(f), Map.class);
+                    busy += st.getOrDefault("busy_timeouts", 0d).longValue();
+                    retries += st.getOrDefault("busy_retries", 0d).longValue();
+                    waitMs += st.getOrDefault("lock_wait_ms", 0d);
+                    otherErrors += st.getOrDefault("other_errors", 0d).longValue();
+                    empty += st.getOrDefault("empty_claims", 0d).longValue();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read bench claim logs", e);
+        }
+
+        List<String> duplicates = new ArrayList<>();
+        claimsPerJob.forEach((id, n) -> {
+            if (n > 1)
+                duplicates.add(id);
+        });
+        List<String> lost = new ArrayList<>();
+        List<String> completed = new ArrayList<>();
+        for (Job j : repo.listJobsByState("COMPLETED"))
+            completed.add(j.getId());
+        Set<String> done = new HashSet<>(completed);
+        for (String id : enqueuedAt.keySet())
+            if (!done.contains(id) || !claimsPerJob.containsKey(id))
+                lost.add(id);
+
+        claimTimes.sort(null);
+        double claimSpan = claimTimes.size() < 2 ? 0
+                : (claimTimes.get(claimTimes.size() - 1) - claimTimes.get(0)) / 1e6;
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("claims", claimTimes.size());
+        res.put("claims_per_sec", round(claimSpan > 0 ? claimTimes.size() / claimSpan : 0));
+        res.put("claims_per_process", perProcess);
+        res.put("empty_claims", empty);
+        res.put("busy_retries", retries);
+        res.put("lock_wait_ms", round(waitMs));
+        res.put("busy_timeouts", busy);
+        res.put("other_claim_errors", otherErrors);
+        res.put("duplicate_claims", duplicates.size());
+        res.put("lost_jobs", lost.size());
+        res.put("exactly_once", duplicates.isEmpty() && lost.isEmpty());
+        if (!duplicates.isEmpty())
+            res.put("duplicate_sample", duplicates.subList(0, Math.min(10, duplicates.size())));
+        if (!lost.isEmpty())
+            res.put("lost_sample", lost.subList(0, Math.min(10, lost.size())));
+        lat.put("claim_call", claimCall.summary(1000));
+        lat.put("queue_wait", queueWait.summary(1000));
+        lat.put("service", service.summary(1000));
+        lat.put("end_to_end", endToEnd.summary(1000));
+        return res;
+    }
+
+    /**
+     * Body of one {@code bench --child} JVM: run {@code workers} workers on a
+     * claim-timing repository, log every claim to
+     * {@code bench/claims-<pid>.tsv}, and exit once the parent creates
+     * {@code bench/stop}.
+     */
+    public static void runChild(int workers) throws IOException, InterruptedException {
+        Database.init();
+        Path dir = Paths.get(Database.baseDir(), "bench");
+        long pid = ProcessHandle.current().pid();
+        TimedRepository repo = new TimedRepository();
+        try (BufferedWriter log = Files.newBufferedWriter(dir.resolve(CLAIM_LOG_PREFIX + pid + ".tsv"))) {
+            Map<String, long[]> claims = new ConcurrentHashMap<>();
+            Worker.addListener(new JobListener() {
+                @Override
+                public void onStart(Job job) {
+                    claims.put(job.getId(), new long[] { repo.lastClaimAt.get(), repo.lastClaimCall.get() });
+                }
+
+                @Override
+                public void onFinish(Job job, int exitCode, long claimedAtMs, long nanos) {
+                    long[] c = claims.remove(job.getId());
+                    if (c == null)
+                        return;
+                    Instant t = Instant.now();
+                    String line = job.getId() + "\t" + c[0] + "\t" + c[1] + "\t"
+                            + (t.getEpochSecond() * 1_000_000L + t.getNano() / 1000) + "\t" + exitCode + "\n";
+                    synchronized (log) {
+                        try {
+                            log.write(line);
+                        } catch (IOException e) {
+                            System.err.println("bench: failed to log claim: " + e.getMessage());
+                        }
+                    }
+                }
+            });
+            WorkerPool pool = new WorkerPool(repo, false, null);
+            for (int i = 0; i < workers; i++)
+                pool.add();
+            while (!Files.exists(dir.resolve("stop")))
+                Thread.sleep(100);
+            pool.stopAll();
+            pool.joinAll(10_000);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pid", pid);
+        stats.put("claims", repo.claims.sum());
+        stats.put("empty_claims", repo.empty.sum());
+        stats.put("busy_timeouts", repo.busy.sum());
+        long[] waits = lockWaits();
+        stats.put("busy_retries", waits[0]);
+        stats.put("lock_wait_ms", waits[1] / 1000.0);
+        stats.put("other_errors", repo.otherErrors.sum());
+        Files.writeString(dir.resolve(CHILD_STATS_PREFIX + pid + ".json"), new Gson().toJson(stats));
+    }
+
+    /**
+     * Busy-handler retries and lock-wait microseconds of every statement this JVM
+     * ran, from {@link DbStats}; most contention shows up here long before any
+     * call waits out the whole busy_timeout.
+     */
+    private static long[] lockWaits() {
+        long retries = 0;
+        long micros = 0;
+        for (DbStats.Row r : DbStats.rows()) {
+            retries += r.busyRetries();
+            micros += r.lockWaitMicros();
+        }
+        return new long[] { retries, micros };
+    }
+
+    /**
+     * Times every claim call and counts the ones that fail with
+     * {@code SQLITE_BUSY}, i.e. that waited out the whole busy_timeout; the worker
+     * backs off and retries those. The claim time and duration are kept per
+     * thread for the listener, which runs on the same worker thread.
+     */
+    private static class TimedRepository extends JobRepository {
+        final LongAdder claims = new LongAdder();
+        final LongAdder empty = new LongAdder();
+        final LongAdder busy = new LongAdder();
+        final LongAdder otherErrors = new LongAdder();
+        final ThreadLocalLong lastClaimAt = new ThreadLocalLong();
+        final ThreadLocalLong lastClaimCall = new ThreadLocalLong();
+
+        TimedRepository() {
+            super(2);
+        }
+
+        @Override
+        public Job claimPendingJob(String workerId, List<String> queues) {
+            long start = System.nanoTime();
+            try {
+                Job job = super.claimPendingJob(workerId, queues);
+                if (job == null) {
+                    empty.increment();
+                } else {
+                    Instant t = Instant.now();
+                    lastClaimAt.set(t.getEpochSecond() * 1_000_000L + t.getNano() / 1000);
+                    lastClaimCall.set((System.nanoTime() - start) / 1000);
+                    claims.increment();
+                }
+                return job;
+            } catch (RuntimeException e) {
+                if (isBusy(e))
+                    busy.increment();
+                else
+                    otherErrors.increment();
+                throw e;
+            }
+        }
+
+        private static boolean isBusy(Throwable e) {
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof SQLException se && (se.getErrorCode() & 0xff) == 5)
+                    return true;
+                if (t.getMessage() != null && t.getMessage().contains("SQLITE_BUSY"))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static class ThreadLocalLong {
+        private final ThreadLocal<long[]> value = ThreadLocal.withInitial(() -> new long[1]);
+
+        long get() {
+            return value.get()[0];
+        }
+
+        void set(long v) {
+            value.get()[0] = v;
+        }
+    }
+
+    private Map<String, Object> header() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        Map<String, Object> cfg = new LinkedHashMap<>();
+        cfg.put("jobs", opt.jobs());
+        cfg.put("workers", opt.workers());
+        cfg.put("processes", opt.processes());
+        cfg.put("mode", opt.rate() <= 0 ? "burst" : "rate");
+        cfg.put("rate", opt.rate());
+        cfg.put("workloads", opt.workloads());
+        cfg.put("executor", opt.shell() ? "shell" : "java");
+        cfg.put("sleep_ms", opt.sleepMs());
+        cfg.put("cpu_rounds", opt.cpuRounds());
+        cfg.put("output_lines", opt.outputLines());
+        report.put("config", cfg);
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("cpus", Runtime.getRuntime().availableProcessors());
+        env.put("java", System.getProperty("java.version"));
+        env.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        report.put("environment", env);
+        return report;
+    }
+
+    private Map<String, Object> results(long t0, long enqueueDone, boolean timedOut) {
+        double wallSec = ((lastFinish.get() == 0 ? now() : lastFinish.get()) - t0) / 1e6;
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("completed", finished.get() - failed.get());
+        res.put("failed", failed.get());
+        res.put("timed_out", timedOut);
+        res.put("wall_seconds", round(wallSec));
+        res.put("enqueue_seconds", round((enqueueDone - t0) / 1e6));
+        res.put("throughput_jobs_per_sec", round(wallSec > 0 ? finished.get() / wallSec : 0));
+        long[] waits = lockWaits();
+        res.put("busy_retries", waits[0]);
+        res.put("lock_wait_ms", round(waits[1] / 1000.0));
+        return res;
+    }
+
+    private void enqueue(JobRepository repo) throws InterruptedException {
+        if (opt.rate() <= 0)
+            enqueueBurst(repo);
+        else
+            enqueueAtRate(repo);
+    }
+
+    private Job newJob(int i) {
+        Job job = new Job(UUID.randomUUID().toString(), command(i), 0, 1);
+        job.setQueue("bench");
+        return job;
+    }
+
+    /** Everything up front through the bulk insert path, in chunks so workers start early. */
+    private void enqueueBurst(JobRepository repo) {
+        final int chunk = 500;
+        for (int from = 0; from < opt.jobs(); from += chunk) {
+            List<Job> jobs = new ArrayList<>();
+            for (int i = from; i < Math.min(opt.jobs(), from + chunk); i++)
+                jobs.add(newJob(i));
+            long t = now();
+            for (Job j : jobs)
+                enqueuedAt.put(j.getId(), t);
+            repo.createJobs(jobs);
+            long per = (now() - t) / jobs.size();
+            for (int i = 0; i < jobs.size(); i++)
+                enqueueCall.record(per);
+        }
+    }
+
+    /** One createJob per tick on an absolute schedule, so slow inserts don't lower the rate. */
+    private void enqueueAtRate(JobRepository repo) throws InterruptedException {
+        long interval = (long) (1_000_000_000L / opt.rate());
+        long next = System.nanoTime();
+        for (int i = 0; i < opt.jobs(); i++) {
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            Job job = newJob(i);
+            long t = now();
+            enqueuedAt.put(job.getId(), t);
+            repo.createJob(job);
+            enqueueCall.record(now() - t);
+            next += interval;
+        }
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 1000) / 1000.0;
+    }
+}
@@ -4,8 +4,30 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * Config key/value store with a process-wide cache.
+ * Reads are served from memory; the cache is revalidated at most every
+ * {@link #REFRESH_INTERVAL_MS} with a single version check against
+ * {@code config_version} and reloaded only when the version moved.
+ * Listeners are notified on change so long-running workers pick up new values
+ * without restarting.
+ */
 public class ConfigRepository {
+    public static final long REFRESH_INTERVAL_MS = 1000;
+
+    private static volatile Snapshot cache;
+    private static final List<Consumer<Map<String, String>>> LISTENERS = new CopyOnWriteArrayList<>();
+    private static Thread watcher;
+    private static final ReentrantLock REFRESH_LOCK = new ReentrantLock();
+
     public void set(String key, String value) {
         Database.init();
         String sql = "INSERT INTO config(key,value) VALUES(?,?) ON CONFLICT(key) DO UPDATE SET value=excluded.value";
@@ -16,21 +38,12 @@ public class ConfigRepository {
         } catch (SQLException e) {
             throw new RuntimeException("Failed to set config", e);
         }
+        refresh(true);
     }
 
     public String get(String key, String defaultValue) {
-        Database.init();
-        String sql = "SELECT value FROM config WHERE key=?";
-        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next())
-                    return rs.getString(1);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to get config", e);
-        }
-        return defaultValue;
+        String v = current().values().get(key);
+        return v == null ? defaultValue : v;
     }
 
     public int getInt(String key, int defaultValue) {
@@ -42,19 +55,136 @@ public class ConfigRepository {
         }
     }
 
-    public java.util.Map<String, String> listAll() {
-        Database.init();
-        String sql = "SELECT key, value FROM config ORDER BY key";
-        java.util.Map<String, String> m = new java.util.LinkedHashMap<>();
-        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    m.put(rs.getString(1), rs.getString(2));
+    /**
+     * Cached value without revalidating (null if unset or nothing is cached yet),
+     * for code that runs inside database calls and must not query the DB itself.
+     */
+    static String peek(String key) {
+        Snapshot s = cache;
+        return s == null ? null : s.values().get(key);
+    }
+
+    /** Read-only view of the cached config; no copy, for hot paths. */
+    public Map<String, String> values() {
+        return current().values();
+    }
+
+    public Map<String, String> listAll() {
+        return new LinkedHashMap<>(current().values());
+    }
+
+    /** Version of the config the cache currently reflects. */
+    public long version() {
+        return current().version();
+    }
+
+    /** Register a callback invoked with the new values whenever the config version changes. */
+    public static void addListener(Consumer<Map<String, String>> listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Start a daemon thread that revalidates the cache every
+     * {@link #REFRESH_INTERVAL_MS} so listeners fire even when nothing reads
+     * config. Idempotent.
+     */
+    public static synchronized void startWatcher() {
+        if (watcher != null)
+            return;
+        watcher = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(REFRESH_INTERVAL_MS);
+                    refresh(false);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Config refresh failed: " + e.getMessage());
                 }
             }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static Snapshot current() {
+        Snapshot s = cache;
+        if (stale(s))
+            s = refresh(false);
+        return s;
+    }
+
+    private static boolean stale(Snapshot s) {
+        return s == null || System.currentTimeMillis() - s.checkedAtMs() >= REFRESH_INTERVAL_MS;
+    }
+
+    /**
+     * Revalidate the cache. Unless {@code force} (or nothing is cached yet), a
+     * thread that finds another one already refreshing keeps the stale snapshot
+     * rather than waiting on it: claims read config, and a refresh stuck in the
+     * busy handler must not park every worker (or pin virtual threads' carriers).
+     */
+    private static Snapshot refresh(boolean force) {
+        Snapshot old = cache;
+        if (force || old == null)
+            REFRESH_LOCK.lock();
+        else if (!REFRESH_LOCK.tryLock())
+            return old;
+        try {
+            return reload(force);
+        } finally {
+            REFRESH_LOCK.unlock();
+        }
+    }
+
+    private static Snapshot reload(boolean force) {
+        Snapshot old = cache;
+        // another thread may have revalidated while this one waited for the lock
+        if (!force && !stale(old))
+            return old;
+        Database.init();
+        Snapshot next;
+        try (Connection c = Database.getConnection()) {
+            long version = readVersion(c);
+            if (old != null && old.version() == version) {
+                next = new Snapshot(version, old.values(), System.currentTimeMillis());
+            } else {
+                next = new Snapshot(version, loadAll(c), System.currentTimeMillis());
+            }
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to list config", e);
+            throw new RuntimeException("Failed to load config", e);
+        }
+        cache = next;
+        if (old != null && old.version() != next.version()) {
+            for (Consumer<Map<String, String>> l : LISTENERS) {
+                try {
+                    l.accept(next.values());
+                } catch (Exception e) {
+                    System.err.println("Config listener failed: " + e.getMessage());
+                }
+            }
+        }
+        return next;
+    }
+
+    private static long readVersion(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT version FROM config_version WHERE id=1");
+                ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
         }
-        return m;
+    }
+
+    private static Map<String, String> loadAll(Connection c) throws SQLException {
+        Map<String, String> m = new LinkedHashMap<>();
+        try (PreparedStatement ps = c.prepareStatement("SELECT key, value FROM config ORDER BY key");
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                m.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    private record Snapshot(long version, Map<String, String> values, long checkedAtMs) {
     }
 }
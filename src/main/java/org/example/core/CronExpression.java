@@ -0,0 +1,142 @@
+package org.example.core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+/**
+ * Standard 5-field cron expression ({@code minute hour day-of-month month day-of-week})
+ * evaluated in the JVM's default time zone. Fields accept {@code *}, lists, ranges,
+ * steps ({@code *}{@code /5}, {@code 1-10/2}) and month/day names; day-of-week 0 and 7
+ * are Sunday. As in Vixie cron, when both day fields are restricted a day matching
+ * either one fires. {@code @hourly}, {@code @daily}, {@code @weekly},
+ * {@code @monthly} and {@code @yearly} are accepted as aliases.
+ */
+public final class CronExpression {
+    private static final Map<String, String> ALIASES = Map.of(
+            "@hourly", "0 * * * *",
+            "@daily", "0 0 * * *",
+            "@midnight", "0 0 * * *",
+            "@weekly", "0 0 * * 0",
+            "@monthly", "0 0 1 * *",
+            "@yearly", "0 0 1 1 *",
+            "@annually", "0 0 1 1 *");
+    private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT",
+            "NOV", "DEC" };
+    private static final String[] DAYS = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+    // search horizon; an expression like "0 0 30 2 *" never matches
+    private static final int MAX_YEARS = 5;
+
+    private final String expression;
+    private final long minutes; // bit per minute 0-59
+    private final long hours; // 0-23
+    private final long daysOfMonth; // 1-31
+    private final long months; // 1-12
+    private final long daysOfWeek; // 0-6, Sunday = 0
+    private final boolean domRestricted;
+    private final boolean dowRestricted;
+
+    private CronExpression(String expression, String[] f) {
+        this.expression = expression;
+        this.minutes = parseField(f[0], 0, 59, null);
+        this.hours = parseField(f[1], 0, 23, null);
+        this.daysOfMonth = parseField(f[2], 1, 31, null);
+        this.months = parseField(f[3], 1, 12, MONTHS);
+        long dow = parseField(f[4], 0, 7, DAYS);
+        if ((dow & (1L << 7)) != 0)
+            dow = (dow | 1L) & ~(1L << 7);
+        this.daysOfWeek = dow;
+        this.domRestricted = !f[2].equals("*");
+        this.dowRestricted = !f[4].equals("*");
+    }
+
+    /** @throws IllegalArgumentException if the expression is malformed */
+    public static CronExpression parse(String expression) {
+        String e = expression.trim();
+        String[] f = ALIASES.getOrDefault(e.toLowerCase(), e).split("\\s+");
+        if (f.length != 5)
+            throw new IllegalArgumentException("cron expression needs 5 fields: " + expression);
+        return new CronExpression(e, f);
+    }
+
+    private static long parseField(String field, int min, int max, String[] names) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+                if (step <= 0)
+                    throw new IllegalArgumentException("bad step in cron field: " + field);
+            }
+            int lo, hi;
+            if (part.equals("*")) {
+                lo = min;
+                hi = max;
+            } else {
+                int dash = part.indexOf('-');
+                lo = value(dash < 0 ? part : part.substring(0, dash), names, min);
+                hi = dash < 0 ? (slash >= 0 ? max : lo) : value(part.substring(dash + 1), names, min);
+            }
+            if (lo < min || hi > max || lo > hi)
+                throw new IllegalArgumentException("cron field out of range: " + field);
+            for (int v = lo; v <= hi; v += step)
+                bits |= 1L << v;
+        }
+        return bits;
+    }
+
+    private static int value(String s, String[] names, int min) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++)
+                if (names[i].equalsIgnoreCase(s))
+                    return i + min;
+        }
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad cron value: " + s);
+        }
+    }
+
+    /** First fire time strictly after {@code afterEpoch} (seconds), or -1 if none within five years. */
+    public long nextAfter(long afterEpoch) {
+        ZonedDateTime t = Instant.ofEpochSecond(afterEpoch).atZone(ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = t.plusYears(MAX_YEARS);
+        while (t.isBefore(limit)) {
+            if (!has(months, t.getMonthValue())) {
+                t = t.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(t)) {
+                t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!has(hours, t.getHour())) {
+                t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!has(minutes, t.getMinute())) {
+                t = t.plusMinutes(1);
+            } else {
+                return t.toEpochSecond();
+            }
+        }
+        return -1;
+    }
+
+    private boolean dayMatches(ZonedDateTime t) {
+        boolean dom = has(daysOfMonth, t.getDayOfMonth());
+        boolean dow = has(daysOfWeek, t.getDayOfWeek().getValue() % 7);
+        if (domRestricted && dowRestricted)
+            return dom || dow;
+        return dom && dow;
+    }
+
+    private static boolean has(long bits, int v) {
+        return (bits & (1L << v)) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -6,13 +6,17 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.regex.Pattern;
 
 public class DaemonManager {
+    private static final Pattern SYSTEMD_PLAIN = Pattern.compile("[A-Za-z0-9_@%+=:,./-]+");
+
     private static Path pidFile() {
         return Paths.get(Database.baseDir(), "worker.pid");
     }
 
-    public static void startDaemon(int count) {
+    public static void startDaemon(List<String> workerArgs) {
         try {
             if (Files.exists(pidFile())) {
                 System.out.println(
@@ -22,7 +26,10 @@ public class DaemonManager {
             String jar = new java.io.File(
                     org.example.Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
             String logsOut = Paths.get(Database.baseDir(), "worker.nohup.out").toString();
-            String cmd = String.format("nohup java -jar '%s' worker start --count %d > %s 2>&1 & echo $!", jar, count,
+            StringBuilder args = new StringBuilder();
+            for (String a : workerArgs)
+                args.append(" '").append(a.replace("'", "'\\''")).append('\'');
+            String cmd = String.format("nohup java -jar '%s' worker start%s > %s 2>&1 & echo $!", jar, args,
                     logsOut);
             ProcessBuilder pb = new ProcessBuilder("/bin/sh", "-c", cmd);
             Process p = pb.start();
@@ -75,6 +82,15 @@ public class DaemonManager {
                             "Daemon: stale pid (process not found). Remove pid file or run 'worker daemon start'.");
                 } else {
                     System.out.println("Daemon running: " + line);
+                    if (Files.exists(ProcessSupervisor.pidFile())) {
+                        for (String shard : Files.readAllLines(ProcessSupervisor.pidFile())) {
+                            if (shard.isBlank())
+                                continue;
+                            boolean alive = ProcessHandle.of(Long.parseLong(shard.trim())).map(ProcessHandle::isAlive)
+                                    .orElse(false);
+                            System.out.println("  shard pid=" + shard.trim() + (alive ? " running" : " not running"));
+                        }
+                    }
                 }
             }
         } catch (Exception e) {
@@ -82,13 +98,51 @@ public class DaemonManager {
         }
     }
 
-    public static void installUnitTemplates() {
+    private static String plistArgs(List<String> args) {
+        StringBuilder sb = new StringBuilder();
+        for (String a : args)
+            sb.append("    <string>").append(xmlEscape(a)).append("</string>\n");
+        return sb.toString();
+    }
+
+    private static String xmlEscape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;")
+                .replace("'", "&apos;");
+    }
+
+    /**
+     * One ExecStart word by systemd's rules: {@code %} specifiers and {@code $}
+     * variables are doubled so they stay literal, and anything but a plain word is
+     * double-quoted with C-style escapes, so spaces, quotes and backslashes survive.
+     */
+    private static String systemdArg(String a) {
+        String s = a.replace("%", "%%").replace("$", "$$");
+        if (SYSTEMD_PLAIN.matcher(s).matches())
+            return s;
+        StringBuilder sb = new StringBuilder("\"");
+        for (char ch : s.toCharArray()) {
+            switch (ch) {
+                case '\\' -> sb.append("\\\\");
+                case '"' -> sb.append("\\\"");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static void installUnitTemplates(List<String> workerArgs) {
         try {
             String jarPath = new java.io.File(
                     org.example.Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
-            String systemd = "[Unit]\nDescription=QueueCTL Workers\nAfter=network.target\n\n[Service]\nType=simple\nExecStart=/usr/bin/java -jar "
-                    + jarPath
-                    + " worker start --count 2\nRestart=on-failure\n\n[Install]\nWantedBy=multi-user.target\n";
+            StringBuilder exec = new StringBuilder("/usr/bin/java -jar ").append(systemdArg(jarPath)).append(" worker start");
+            for (String a : workerArgs)
+                exec.append(' ').append(systemdArg(a));
+            String systemd = "[Unit]\nDescription=QueueCTL Workers\nAfter=network.target\n\n[Service]\nType=simple\nExecStart="
+                    + exec
+                    + "\nRestart=on-failure\n\n[Install]\nWantedBy=multi-user.target\n";
             Path systemdPath = Paths.get(Database.baseDir(), "queuectl-worker.service");
             Files.writeString(systemdPath, systemd);
 
@@ -98,8 +152,9 @@ public class DaemonManager {
                     "<plist version=\"1.0\">\n<dict>\n" +
                     "  <key>Label</key><string>io.queuectl.worker</string>\n" +
                     "  <key>ProgramArguments</key>\n  <array>\n    <string>/usr/bin/java</string>\n    <string>-jar</string>\n    <string>"
-                    + jarPath
-                    + "</string>\n    <string>worker</string>\n    <string>start</string>\n    <string>--count</string>\n    <string>2</string>\n  </array>\n"
+                    + xmlEscape(jarPath)
+                    + "</string>\n    <string>worker</string>\n    <string>start</string>\n"
+                    + plistArgs(workerArgs) + "  </array>\n"
                     +
                     "  <key>RunAtLoad</key><true/>\n" +
                     "</dict>\n</plist>\n";
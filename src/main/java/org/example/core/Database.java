@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -21,100 +22,297 @@ public class Database {
         }
     }
 
+    /** A connection with statement timing and lock-wait accounting ({@link DbStats}). */
     public static Connection getConnection() throws SQLException {
+        return DbStats.instrument(rawConnection());
+    }
+
+    /** Uninstrumented connection, for DbStats' own queries. */
+    static Connection rawConnection() throws SQLException {
         // set busy timeout via connection parameter (milliseconds)
-        return DriverManager.getConnection(JDBC_URL + "?busy_timeout=5000");
+        return DriverManager.getConnection(JDBC_URL + "?busy_timeout=" + DbStats.BUSY_TIMEOUT_MS);
     }
 
+    /**
+     * Schema version stored in the SQLite header ({@code PRAGMA user_version}).
+     * Bump this and add a step to {@link #migrate(Connection, int)} whenever the
+     * schema changes.
+     */
+    static final int SCHEMA_VERSION = 12;
+
+    private static volatile boolean initialized;
+
+    /**
+     * Ensure the data directory and schema exist. Runs at most once per process;
+     * when the on-disk schema is current this costs a single
+     * {@code PRAGMA user_version} read.
+     */
     public static void init() {
-        try {
-            Path p = Paths.get(System.getProperty("user.home"), ".queuectl");
-            if (!Files.exists(p)) {
-                Files.createDirectories(p);
+        if (initialized)
+            return;
+        synchronized (Database.class) {
+            if (initialized)
+                return;
+            try {
+                Path p = Paths.get(System.getProperty("user.home"), ".queuectl");
+                if (!Files.exists(p)) {
+                    Files.createDirectories(p);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create DB directory", e);
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create DB directory", e);
+
+            try {
+                Path logs = Paths.get(BASE_DIR, "logs");
+                if (!Files.exists(logs))
+                    Files.createDirectories(logs);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create logs directory", e);
+            }
+
+            try (Connection c = getConnection()) {
+                if (userVersion(c) < SCHEMA_VERSION) {
+                    upgrade(c);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to initialize database", e);
+            }
+            initialized = true;
         }
+    }
 
-        try {
-            Path logs = Paths.get(BASE_DIR, "logs");
-            if (!Files.exists(logs))
-                Files.createDirectories(logs);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create logs directory", e);
+    private static int userVersion(Connection c) throws SQLException {
+        try (Statement s = c.createStatement(); ResultSet rs = s.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
         }
+    }
 
-        try (Connection c = getConnection(); Statement s = c.createStatement()) {
+    /**
+     * Apply pending migrations inside one write transaction. BEGIN IMMEDIATE takes
+     * the writer lock up front so concurrent CLI processes serialize here and the
+     * loser sees the bumped version instead of re-running the steps.
+     */
+    private static void upgrade(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
             c.setAutoCommit(true);
-
-            s.executeUpdate("CREATE TABLE IF NOT EXISTS jobs (" +
-                    "id TEXT PRIMARY KEY, " +
-                    "command TEXT NOT NULL, " +
-                    "state TEXT NOT NULL, " +
-                    "attempts INTEGER NOT NULL, " +
-                    "max_retries INTEGER NOT NULL, " +
-                    "created_at INTEGER NOT NULL, " +
-                    "updated_at INTEGER NOT NULL, " +
-                    "available_at INTEGER NOT NULL, " +
-                    "run_at INTEGER, " +
-                    "timeout_seconds INTEGER NOT NULL DEFAULT 0, " +
-                    "last_error TEXT, " +
-                    "output TEXT, " +
-                    "priority INTEGER NOT NULL, " +
-                    "locked_by TEXT, " +
-                    "locked_at INTEGER" +
-                    ")");
-
-            s.executeUpdate("CREATE TABLE IF NOT EXISTS config (key TEXT PRIMARY KEY, value TEXT)");
-
-            s.executeUpdate("CREATE TABLE IF NOT EXISTS workers (" +
-                    "worker_id TEXT PRIMARY KEY, " +
-                    "status TEXT NOT NULL, " +
-                    "last_heartbeat INTEGER NOT NULL, " +
-                    "started_at INTEGER NOT NULL" +
-                    ")");
-
-            // performance samples (kept lightweight; prune per worker)
-            s.executeUpdate("CREATE TABLE IF NOT EXISTS worker_perf (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "worker_id TEXT NOT NULL, " +
-                    "ts_ms INTEGER NOT NULL, " +
-                    "heap_used_bytes INTEGER NOT NULL, " +
-                    "cpu_load REAL NOT NULL, " +
-                    "last_job_duration_ms INTEGER" +
-                    ")");
-            s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_worker_perf_worker_ts ON worker_perf(worker_id, ts_ms)");
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to initialize database", e);
+            s.execute("BEGIN IMMEDIATE");
+            try {
+                int from = userVersion(c);
+                if (from < SCHEMA_VERSION) {
+                    migrate(c, from);
+                    s.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+                }
+                s.execute("COMMIT");
+            } catch (SQLException e) {
+                s.execute("ROLLBACK");
+                throw e;
+            }
         }
+    }
 
-        // Migrations: add columns if missing
-        try (Connection c = getConnection(); Statement s = c.createStatement()) {
-            // run_at column
-            try {
-                s.executeUpdate("ALTER TABLE jobs ADD COLUMN run_at INTEGER");
-            } catch (SQLException ignore) {
+    private static void migrate(Connection c, int from) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            if (from < 1) {
+                // v1: baseline schema. Databases created before versioning report 0 but
+                // may already hold some of these tables/columns, hence IF NOT EXISTS and
+                // the column checks.
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS jobs (" +
+                        "id TEXT PRIMARY KEY, " +
+                        "command TEXT NOT NULL, " +
+                        "state TEXT NOT NULL, " +
+                        "attempts INTEGER NOT NULL, " +
+                        "max_retries INTEGER NOT NULL, " +
+                        "created_at INTEGER NOT NULL, " +
+                        "updated_at INTEGER NOT NULL, " +
+                        "available_at INTEGER NOT NULL, " +
+                        "run_at INTEGER, " +
+                        "timeout_seconds INTEGER NOT NULL DEFAULT 0, " +
+                        "last_error TEXT, " +
+                        "output TEXT, " +
+                        "priority INTEGER NOT NULL, " +
+                        "locked_by TEXT, " +
+                        "locked_at INTEGER" +
+                        ")");
+
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS config (key TEXT PRIMARY KEY, value TEXT)");
+
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS workers (" +
+                        "worker_id TEXT PRIMARY KEY, " +
+                        "status TEXT NOT NULL, " +
+                        "last_heartbeat INTEGER NOT NULL, " +
+                        "started_at INTEGER NOT NULL" +
+                        ")");
+
+                // performance samples (kept lightweight; prune per worker)
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS worker_perf (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "worker_id TEXT NOT NULL, " +
+                        "ts_ms INTEGER NOT NULL, " +
+                        "heap_used_bytes INTEGER NOT NULL, " +
+                        "cpu_load REAL NOT NULL, " +
+                        "last_job_duration_ms INTEGER" +
+                        ")");
+                s.executeUpdate(
+                        "CREATE INDEX IF NOT EXISTS idx_worker_perf_worker_ts ON worker_perf(worker_id, ts_ms)");
+
+                addColumnIfMissing(c, "jobs", "run_at", "INTEGER");
+                addColumnIfMissing(c, "jobs", "timeout_seconds", "INTEGER NOT NULL DEFAULT 0");
+                // workers table: current job & perf state columns
+                addColumnIfMissing(c, "workers", "current_job_id", "TEXT");
+                addColumnIfMissing(c, "workers", "current_job_start_ms", "INTEGER");
+                addColumnIfMissing(c, "workers", "last_finished_ms", "INTEGER");
             }
-            // timeout_seconds column
-            try {
-                s.executeUpdate("ALTER TABLE jobs ADD COLUMN timeout_seconds INTEGER NOT NULL DEFAULT 0");
-            } catch (SQLException ignore) {
+            if (from < 2) {
+                // v2: monotonically increasing config version, bumped by triggers so every
+                // writer (CLI, web UI, raw SQL) invalidates cached config
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS config_version (" +
+                        "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                        "version INTEGER NOT NULL" +
+                        ")");
+                s.executeUpdate("INSERT OR IGNORE INTO config_version(id, version) VALUES (1, 0)");
+                for (String op : new String[] { "INSERT", "UPDATE", "DELETE" }) {
+                    s.executeUpdate("CREATE TRIGGER IF NOT EXISTS config_bump_" + op.toLowerCase() +
+                            " AFTER " + op + " ON config BEGIN " +
+                            "UPDATE config_version SET version = version + 1 WHERE id = 1; END");
+                }
             }
-            // workers table: add current job & perf state columns if missing
-            try {
-                s.executeUpdate("ALTER TABLE workers ADD COLUMN current_job_id TEXT");
-            } catch (SQLException ignore) {
+            if (from < 3) {
+                // v3: claim leases so jobs orphaned by a dead worker JVM can be reaped
+                addColumnIfMissing(c, "jobs", "lease_expires_at", "INTEGER");
+                s.executeUpdate(
+                        "CREATE INDEX IF NOT EXISTS idx_jobs_state_lease ON jobs(state, lease_expires_at)");
+                // jobs claimed before leases existed get one default lease from their lock time
+                s.executeUpdate("UPDATE jobs SET lease_expires_at = COALESCE(locked_at, updated_at) + "
+                        + JobRepository.DEFAULT_LEASE_SECONDS + " WHERE state='PROCESSING' AND lease_expires_at IS NULL");
             }
-            try {
-                s.executeUpdate("ALTER TABLE workers ADD COLUMN current_job_start_ms INTEGER");
-            } catch (SQLException ignore) {
+            if (from < 4) {
+                // v4: named queues. Claim indexes match the claim ORDER BY so picking the
+                // next job is an index seek per queue (or globally) rather than a scan.
+                addColumnIfMissing(c, "jobs", "queue", "TEXT NOT NULL DEFAULT '" + Job.DEFAULT_QUEUE + "'");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_jobs_claim ON jobs(state, priority DESC, available_at, created_at)");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_jobs_queue_claim ON jobs(state, queue, priority DESC, available_at, created_at)");
             }
-            try {
-                s.executeUpdate("ALTER TABLE workers ADD COLUMN last_finished_ms INTEGER");
-            } catch (SQLException ignore) {
+            if (from < 5) {
+                // v5: tenants for fair scheduling. One index per fair-claim probe: best
+                // priority and longest waiting within a tenant.
+                addColumnIfMissing(c, "jobs", "tenant", "TEXT NOT NULL DEFAULT '" + Job.DEFAULT_TENANT + "'");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_jobs_tenant_claim ON jobs(state, tenant, priority DESC, available_at, created_at)");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_jobs_tenant_age ON jobs(state, tenant, available_at, created_at)");
+            }
+            if (from < 6) {
+                // v6: job dependencies. Children wait in BLOCKED with a count of
+                // unfinished parents; completing a parent walks only its own edges.
+                addColumnIfMissing(c, "jobs", "pending_parents", "INTEGER NOT NULL DEFAULT 0");
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS job_deps (" +
+                        "parent_id TEXT NOT NULL, " +
+                        "child_id TEXT NOT NULL, " +
+                        "PRIMARY KEY (parent_id, child_id)" +
+                        ") WITHOUT ROWID");
+            }
+            if (from < 7) {
+                // v7: recurring schedules, materialized into jobs by Scheduler
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS schedules (" +
+                        "name TEXT PRIMARY KEY, " +
+                        "spec TEXT NOT NULL, " +
+                        "command TEXT NOT NULL, " +
+                        "queue TEXT NOT NULL DEFAULT '" + Job.DEFAULT_QUEUE + "', " +
+                        "tenant TEXT NOT NULL DEFAULT '" + Job.DEFAULT_TENANT + "', " +
+                        "priority INTEGER, " +
+                        "max_retries INTEGER, " +
+                        "timeout_seconds INTEGER, " +
+                        "misfire TEXT NOT NULL DEFAULT '" + Schedule.MISFIRE_FIRE_ONCE + "', " +
+                        "allow_overlap INTEGER NOT NULL DEFAULT 0, " +
+                        "enabled INTEGER NOT NULL DEFAULT 1, " +
+                        "next_fire_at INTEGER NOT NULL, " +
+                        "last_fired_at INTEGER, " +
+                        "last_job_id TEXT" +
+                        ")");
             }
-        } catch (SQLException e) {
-            // ignore migration failures; columns may already exist
+            if (from < 8) {
+                // v8: idempotency keys. Only keys inside their window are indexed; an
+                // expired key is nulled out before a new job may take it.
+                addColumnIfMissing(c, "jobs", "dedup_key", "TEXT");
+                addColumnIfMissing(c, "jobs", "dedup_until", "INTEGER");
+                s.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_jobs_dedup ON jobs(dedup_key) WHERE dedup_key IS NOT NULL");
+            }
+            if (from < 9) {
+                // v9: per-interval latency histograms from each worker JVM (LatencyRecorder)
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS latency_snapshots (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "ts_ms INTEGER NOT NULL, " +
+                        "source TEXT NOT NULL, " +
+                        "queue TEXT NOT NULL, " +
+                        "priority INTEGER NOT NULL, " +
+                        "metric TEXT NOT NULL, " +
+                        "count INTEGER NOT NULL, " +
+                        "histogram TEXT NOT NULL" +
+                        ")");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_latency_snapshots_ts ON latency_snapshots(ts_ms)");
+            }
+            if (from < 10) {
+                // v10: per-attempt CPU/RSS/IO of shell jobs' process trees (UsageRecorder)
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS job_usage (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "job_id TEXT NOT NULL, " +
+                        "template TEXT NOT NULL, " +
+                        "queue TEXT NOT NULL, " +
+                        "finished_ms INTEGER NOT NULL, " +
+                        "exit_code INTEGER NOT NULL, " +
+                        "wall_ms INTEGER NOT NULL, " +
+                        "cpu_ms INTEGER NOT NULL, " +
+                        "peak_rss_kb INTEGER NOT NULL, " +
+                        "read_bytes INTEGER NOT NULL, " +
+                        "write_bytes INTEGER NOT NULL, " +
+                        "processes INTEGER NOT NULL" +
+                        ")");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_job_usage_finished ON job_usage(finished_ms)");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_job_usage_job ON job_usage(job_id)");
+            }
+            if (from < 11) {
+                // v11: downsampled 10s/1m/1h time series (MetricsRollup); each row merges by addition
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS metric_rollups (" +
+                        "metric TEXT NOT NULL, " +
+                        "res INTEGER NOT NULL, " +
+                        "bucket_ms INTEGER NOT NULL, " +
+                        "source TEXT NOT NULL, " +
+                        "label TEXT NOT NULL, " +
+                        "count INTEGER NOT NULL, " +
+                        "sum REAL NOT NULL, " +
+                        "min REAL NOT NULL, " +
+                        "max REAL NOT NULL, " +
+                        "PRIMARY KEY (metric, res, bucket_ms, source, label)" +
+                        ") WITHOUT ROWID");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_metric_rollups_res_bucket ON metric_rollups(res, bucket_ms)");
+                s.executeUpdate("CREATE INDEX IF NOT EXISTS idx_worker_perf_ts ON worker_perf(ts_ms)");
+            }
+            if (from < 12) {
+                // v12: exponentially decayed arrival/service counters per queue and priority (QueueRates)
+                s.executeUpdate("CREATE TABLE IF NOT EXISTS queue_rates (" +
+                        "queue TEXT NOT NULL, " +
+                        "priority INTEGER NOT NULL, " +
+                        "arrivals REAL NOT NULL, " +
+                        "services REAL NOT NULL, " +
+                        "busy_seconds REAL NOT NULL, " +
+                        "since_ms INTEGER NOT NULL, " +
+                        "served_since_ms INTEGER, " +
+                        "updated_ms INTEGER NOT NULL, " +
+                        "PRIMARY KEY (queue, priority)" +
+                        ") WITHOUT ROWID");
+            }
+        }
+    }
+
+    private static void addColumnIfMissing(Connection c, String table, String column, String ddl)
+            throws SQLException {
+        try (Statement s = c.createStatement();
+                ResultSet rs = s.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name")))
+                    return;
+            }
+        }
+        try (Statement s = c.createStatement()) {
+            s.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + ddl);
         }
     }
 
@@ -0,0 +1,372 @@
+package org.example.core;
+
+import com.google.gson.Gson;
+import org.sqlite.BusyHandler;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Statement-level database accounting. {@link Database#getConnection()} hands
+ * out connections wrapped by {@link #instrument}: every execute on a
+ * Statement/PreparedStatement, and every commit/rollback, is timed into a
+ * per-SQL-text entry (calls, errors, latency histogram). SQLite's busy wait runs
+ * in our own {@link BusyHandler} with the same budget as {@code busy_timeout},
+ * so lock-wait time and retries are charged to the statement that waited, and
+ * a statement that gives up is counted as a {@code SQLITE_BUSY} error.
+ * <p>
+ * Statements slower than {@code db_slow_ms} (default 250, 0 = off) go to
+ * {@code logs/slow-queries.log} with their {@code EXPLAIN QUERY PLAN}. Stats are
+ * per process; {@link #startPublisher()} writes them to {@code dbstats/<pid>.json}
+ * every {@link #PUBLISH_EVERY_MS} so {@code queuectl diag db} and the dashboard
+ * can merge all running processes.
+ */
+public final class DbStats {
+    public static final int DEFAULT_SLOW_MS = 250;
+    static final long BUSY_TIMEOUT_MS = 5000;
+    private static final long PUBLISH_EVERY_MS = 15_000;
+    private static final int MAX_ENTRIES = 256;
+    private static final String OTHER = "(other statements)";
+    /** Same back-off steps as SQLite's built-in busy_timeout handler. */
+    private static final int[] DELAYS_MS = { 1, 2, 5, 10, 15, 20, 25, 25, 25, 50, 50, 100 };
+    private static final Pattern WS = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\?(\\s*,\\s*\\?)+\\)");
+    private static final Gson GSON = new Gson();
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<long[]> WAIT = ThreadLocal.withInitial(() -> new long[3]);
+    private static Thread publisher;
+
+    private DbStats() {
+    }
+
+    /** Persisted/merged form of one statement's stats; times in microseconds. */
+    public record Row(String sql, long calls, long errors, long busyErrors, long busyRetries, long lockWaitMicros,
+            String histogram, String plan) {
+    }
+
+    /** Display form, times in milliseconds. */
+    public record Summary(String sql, long calls, long errors, long busyErrors, long busyRetries, double lockWaitMs,
+            double totalMs, double meanMs, double p50Ms, double p99Ms, double maxMs, String plan) {
+    }
+
+    private static final class Entry {
+        final String sql;
+        /** One raw text seen for this entry, for EXPLAIN (the key has IN lists folded). */
+        volatile String sample;
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder busyErrors = new LongAdder();
+        final LongAdder busyRetries = new LongAdder();
+        final LongAdder lockWaitMicros = new LongAdder();
+        final LatencyHistogram micros = new LatencyHistogram();
+        volatile String plan;
+
+        Entry(String sql) {
+            this.sql = sql;
+        }
+
+        Row row() {
+            return new Row(sql, calls.sum(), errors.sum(), busyErrors.sum(), busyRetries.sum(), lockWaitMicros.sum(),
+                    micros.encode(), plan);
+        }
+    }
+
+    /** Wrap a fresh SQLite connection; installs the accounting busy handler on it. */
+    static Connection instrument(Connection raw) throws SQLException {
+        BusyHandler.setHandler(raw, new AccountingBusyHandler());
+        return (Connection) Proxy.newProxyInstance(DbStats.class.getClassLoader(), new Class<?>[] { Connection.class },
+                new ConnectionHandler(raw));
+    }
+
+    private static final class AccountingBusyHandler extends BusyHandler {
+        @Override
+        protected int callback(int previous) {
+            long[] w = WAIT.get();
+            long start = System.nanoTime();
+            if (previous == 0)
+                w[2] = start;
+            if (start - w[2] >= BUSY_TIMEOUT_MS * 1_000_000L)
+                return 0;
+            try {
+                Thread.sleep(DELAYS_MS[Math.min(previous, DELAYS_MS.length - 1)]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            w[0]++;
+            w[1] += System.nanoTime() - start;
+            return 1;
+        }
+    }
+
+    private record ConnectionHandler(Connection target) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("commit".equals(name) || ("rollback".equals(name) && (args == null || args.length == 0)))
+                return timed(name.toUpperCase(), () -> call(target, method, args));
+            Object result = call(target, method, args);
+            if (result instanceof PreparedStatement ps && args != null && args[0] instanceof String sql)
+                return Proxy.newProxyInstance(DbStats.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                        new StatementHandler(ps, sql));
+            if (result instanceof Statement s && "createStatement".equals(name))
+                return Proxy.newProxyInstance(DbStats.class.getClassLoader(), new Class<?>[] { Statement.class },
+                        new StatementHandler(s, null));
+            return result;
+        }
+    }
+
+    private record StatementHandler(Statement target, String sql) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute"))
+                return call(target, method, args);
+            String text = args != null && args.length > 0 && args[0] instanceof String s ? s : sql;
+            return timed(text, () -> call(target, method, args));
+        }
+    }
+
+    private interface SqlCall {
+        Object run() throws Throwable;
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object timed(String sql, SqlCall call) throws Throwable {
+        long[] w = WAIT.get();
+        w[0] = 0;
+        w[1] = 0;
+        JobEvents.DbCommit event = new JobEvents.DbCommit();
+        event.begin();
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return call.run();
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            Entry e = entry(sql);
+            if (e.sample == null)
+                e.sample = sql;
+            e.calls.increment();
+            e.micros.record(micros);
+            e.busyRetries.add(w[0]);
+            e.lockWaitMicros.add(w[1] / 1000);
+            if (failure != null) {
+                e.errors.increment();
+                if (failure instanceof SQLException se && (se.getErrorCode() & 0xff) == 5)
+                    e.busyErrors.increment();
+            }
+            event.end();
+            if (event.shouldCommit() && isCommit(sql)) {
+                event.statement = sql.strip();
+                event.lockWait = w[1] / 1000;
+                event.busyRetries = w[0];
+                event.commit();
+            }
+            long slowMs = slowThresholdMs();
+            if (slowMs > 0 && micros >= slowMs * 1000)
+                logSlow(e, micros, w[0], w[1] / 1000);
+        }
+    }
+
+    private static boolean isCommit(String sql) {
+        String s = sql.strip();
+        return s.regionMatches(true, 0, "COMMIT", 0, 6) || s.regionMatches(true, 0, "ROLLBACK", 0, 8)
+                || s.equalsIgnoreCase("END") || s.equalsIgnoreCase("END TRANSACTION");
+    }
+
+    private static Entry entry(String sql) {
+        String key = normalize(sql);
+        Entry e = ENTRIES.get(key);
+        if (e != null)
+            return e;
+        if (ENTRIES.size() >= MAX_ENTRIES)
+            key = OTHER;
+        return ENTRIES.computeIfAbsent(key, Entry::new);
+    }
+
+    /** Whitespace collapsed and {@code IN (?,?,?)} lists folded, so dynamic claims share an entry. */
+    static String normalize(String sql) {
+        if (sql == null)
+            return OTHER;
+        return IN_LIST.matcher(WS.matcher(sql.trim()).replaceAll(" ")).replaceAll("(?...)");
+    }
+
+    private static long slowThresholdMs() {
+        // config is read from the cache only: refreshing it here would recurse into the DB
+        String v = ConfigRepository.peek("db_slow_ms");
+        if (v == null)
+            return DEFAULT_SLOW_MS;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_SLOW_MS;
+        }
+    }
+
+    private static void logSlow(Entry e, long micros, long retries, long waitMicros) {
+        if (e.plan == null)
+            e.plan = explain(e.sample != null ? e.sample : e.sql);
+        String line = String.format("%s pid=%d %.1fms lock_wait=%.1fms busy_retries=%d sql=%s plan=%s%n",
+                Instant.now(), ProcessHandle.current().pid(), micros / 1000.0, waitMicros / 1000.0, retries, e.sql,
+                e.plan);
+        synchronized (DbStats.class) {
+            try {
+                Files.writeString(Paths.get(Database.baseDir(), "logs", "slow-queries.log"), line,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException ignored) {
+                // slow-query logging is best effort
+            }
+        }
+    }
+
+    /** {@code EXPLAIN QUERY PLAN} details joined with " | "; "-" for statements without a plan. */
+    private static String explain(String sql) {
+        String s = sql.trim().toUpperCase();
+        if (!(s.startsWith("SELECT") || s.startsWith("UPDATE") || s.startsWith("DELETE") || s.startsWith("INSERT")
+                || s.startsWith("WITH")))
+            return "-";
+        try (Connection c = Database.rawConnection();
+                Statement st = c.createStatement();
+                ResultSet rs = st.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            List<String> steps = new ArrayList<>();
+            while (rs.next())
+                steps.add(rs.getString("detail"));
+            return steps.isEmpty() ? "-" : String.join(" | ", steps);
+        } catch (SQLException ex) {
+            return "unavailable: " + ex.getMessage();
+        }
+    }
+
+    /** This process's statements. */
+    public static List<Row> rows() {
+        List<Row> out = new ArrayList<>();
+        for (Entry e : ENTRIES.values())
+            out.add(e.row());
+        return out;
+    }
+
+    private static Path dir() {
+        return Paths.get(Database.baseDir(), "dbstats");
+    }
+
+    /** Write this process's stats to {@code dbstats/<pid>.json} periodically. Idempotent. */
+    public static synchronized void startPublisher() {
+        if (publisher != null)
+            return;
+        publisher = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(PUBLISH_EVERY_MS);
+                    publish();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.err.println("DB stats publish failed: " + e.getMessage());
+                }
+            }
+        }, "dbstats-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    static void publish() throws IOException {
+        Files.createDirectories(dir());
+        long pid = ProcessHandle.current().pid();
+        Path tmp = dir().resolve(pid + ".json.tmp");
+        Files.writeString(tmp, GSON.toJson(rows().toArray(new Row[0])));
+        Files.move(tmp, dir().resolve(pid + ".json"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Merge this process with the published stats of every other process that is
+     * still running ({@code includeExited}: of every file), sorted by total time.
+     * Files of processes that exited more than a day ago are removed.
+     */
+    public static List<Summary> collect(boolean includeExited) {
+        Map<String, List<Row>> bySql = new LinkedHashMap<>();
+        for (Row r : rows())
+            bySql.computeIfAbsent(r.sql(), k -> new ArrayList<>()).add(r);
+        long self = ProcessHandle.current().pid();
+        if (Files.isDirectory(dir())) {
+            try (var files = Files.list(dir())) {
+                for (Path f : files.filter(p -> p.toString().endsWith(".json")).toList()) {
+                    long pid;
+                    try {
+                        pid = Long.parseLong(f.getFileName().toString().replace(".json", ""));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if (pid == self)
+                        continue;
+                    boolean alive = ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+                    if (!alive && Files.getLastModifiedTime(f).toMillis() < System.currentTimeMillis() - 86_400_000L) {
+                        Files.deleteIfExists(f);
+                        continue;
+                    }
+                    if (!alive && !includeExited)
+                        continue;
+                    Row[] rows = GSON.fromJson(Files.readString(f), Row[].class);
+                    if (rows != null)
+                        for (Row r : rows)
+                            bySql.computeIfAbsent(r.sql(), k -> new ArrayList<>()).add(r);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read DB stats", e);
+            }
+        }
+        List<Summary> out = new ArrayList<>();
+        for (Map.Entry<String, List<Row>> e : bySql.entrySet()) {
+            LatencyHistogram h = new LatencyHistogram();
+            long calls = 0, errors = 0, busy = 0, retries = 0, wait = 0;
+            String plan = null;
+            for (Row r : e.getValue()) {
+                h.add(LatencyHistogram.decode(r.histogram()));
+                calls += r.calls();
+                errors += r.errors();
+                busy += r.busyErrors();
+                retries += r.busyRetries();
+                wait += r.lockWaitMicros();
+                if (plan == null)
+                    plan = r.plan();
+            }
+            out.add(new Summary(e.getKey(), calls, errors, busy, retries, wait / 1000.0, h.sum() / 1000.0,
+                    h.mean() / 1000.0, h.percentile(50) / 1000.0, h.percentile(99) / 1000.0, h.max() / 1000.0, plan));
+        }
+        out.sort(Comparator.comparingDouble(Summary::totalMs).reversed());
+        return out;
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-JVM bloom filter of idempotency keys this process has enqueued or seen
+ * collide. A key that is definitely absent is a fresh key, so the enqueue can
+ * go straight to the INSERT without first releasing an expired holder of the
+ * key. A false positive, or a key another process inserted, only costs that
+ * extra statement, because the unique index is what enforces dedup. Lock-free;
+ * cleared when full rather than letting the false-positive rate climb.
+ */
+final class DedupFilter {
+    private static final int BITS = 1 << 22; // 512 KiB
+    private static final int HASHES = 5;
+    private static final int CAPACITY = BITS / 10; // ~1% false positives at capacity
+
+    private static final AtomicLongArray WORDS = new AtomicLongArray(BITS / 64);
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private DedupFilter() {
+    }
+
+    static boolean mightContain(String key) {
+        long h = hash(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (BITS - 1);
+            if ((WORDS.get(bit >>> 6) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    static void put(String key) {
+        if (COUNT.incrementAndGet() > CAPACITY) {
+            // racing puts may be lost with the clear; that only means a skipped fast path later
+            for (int i = 0; i < WORDS.length(); i++)
+                WORDS.set(i, 0);
+            COUNT.set(1);
+        }
+        long h = hash(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (BITS - 1);
+            int w = bit >>> 6;
+            long mask = 1L << bit;
+            long cur;
+            while (((cur = WORDS.get(w)) & mask) == 0 && !WORDS.compareAndSet(w, cur, cur | mask)) {
+                // retry
+            }
+        }
+    }
+
+    /** 64-bit FNV-1a over the UTF-8 bytes, finished with a murmur3 mix. */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
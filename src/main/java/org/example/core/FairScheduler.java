@@ -0,0 +1,113 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Deficit round-robin over tenants, kept in memory by the worker host.
+ * Each visit credits a tenant its weight ({@code tenant.<name>.weight}, default
+ * 1); every claim costs 1. A tenant with weight 3 therefore gets three claims
+ * per round to a weight-1 tenant's one, however deep either backlog is.
+ * The active set is refreshed from the DB every {@link #REFRESH_MS}; tenants
+ * whose claim comes back empty drop out until the next refresh.
+ */
+public class FairScheduler {
+    public static final String POLICY_STRICT = "strict";
+    public static final String POLICY_FAIR = "fair";
+    public static final int DEFAULT_AGING_SECONDS = 300;
+    /** Upper bound on tenants probed by a single claim before giving up. */
+    static final int MAX_TENANTS_PER_CLAIM = 8;
+    private static final long REFRESH_MS = 2000;
+    private static final double MIN_WEIGHT = 0.01;
+
+    private final Supplier<List<String>> pendingTenants;
+    private final ConfigRepository config;
+    private final Map<String, Double> deficits = new HashMap<>();
+    private List<String> active = new ArrayList<>();
+    private int cursor;
+    private boolean credited;
+    private long refreshedAtMs;
+
+    public FairScheduler(Supplier<List<String>> pendingTenants, ConfigRepository config) {
+        this.pendingTenants = pendingTenants;
+        this.config = config;
+    }
+
+    /** Tenant to claim from next, or null when no tenant has pending work. */
+    public synchronized String next() {
+        long now = System.currentTimeMillis();
+        if (now - refreshedAtMs >= REFRESH_MS) {
+            refresh();
+            refreshedAtMs = now;
+        }
+        if (active.isEmpty())
+            return null;
+        // a tenant below one claim's worth of credit is skipped until enough
+        // rounds have passed; bounded because weights are floored at MIN_WEIGHT
+        int maxSteps = active.size() * ((int) Math.ceil(1 / MIN_WEIGHT) + 1);
+        for (int step = 0; step < maxSteps; step++) {
+            String tenant = active.get(cursor);
+            if (!credited) {
+                deficits.merge(tenant, weight(tenant), Double::sum);
+                credited = true;
+            }
+            double d = deficits.getOrDefault(tenant, 0.0);
+            if (d >= 1) {
+                deficits.put(tenant, d - 1);
+                return tenant;
+            }
+            advance();
+        }
+        return null;
+    }
+
+    /** The tenant had nothing claimable: forget its credit and skip it until refresh. */
+    public synchronized void markIdle(String tenant) {
+        int idx = active.indexOf(tenant);
+        if (idx < 0)
+            return;
+        deficits.remove(tenant);
+        active.remove(idx);
+        if (idx < cursor) {
+            cursor--;
+        } else if (idx == cursor) {
+            credited = false;
+        }
+        if (cursor >= active.size())
+            cursor = 0;
+    }
+
+    private void refresh() {
+        String current = active.isEmpty() ? null : active.get(cursor);
+        List<String> fresh = new ArrayList<>(pendingTenants.get());
+        fresh.sort(null);
+        deficits.keySet().retainAll(fresh);
+        active = fresh;
+        int idx = current == null ? -1 : active.indexOf(current);
+        if (idx >= 0) {
+            cursor = idx;
+        } else {
+            cursor = 0;
+            credited = false;
+        }
+    }
+
+    private void advance() {
+        cursor = (cursor + 1) % active.size();
+        credited = false;
+    }
+
+    private double weight(String tenant) {
+        String v = config.get("tenant." + tenant + ".weight", null);
+        if (v == null)
+            return 1;
+        try {
+            return Math.max(MIN_WEIGHT, Double.parseDouble(v.trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
@@ -3,9 +3,12 @@ package org.example.core;
 import java.time.Instant;
 
 public class Job {
+    public static final String DEFAULT_QUEUE = "default";
+    public static final String DEFAULT_TENANT = "default";
+
     private String id;
     private String command;
-    private JobState state; // PENDING, PROCESSING, COMPLETED, FAILED, DEAD
+    private JobState state; // PENDING, BLOCKED, PROCESSING, COMPLETED, FAILED, DEAD
     private int attempts;
     private int maxRetries;
     private Instant createdAt;
@@ -16,6 +19,11 @@ public class Job {
     private String lastError;
     private String output;
     private int timeoutSeconds; // 0 means no timeout
+    private String queue = DEFAULT_QUEUE;
+    private String tenant = DEFAULT_TENANT; // owner, for fair scheduling
+    private String dedupKey; // idempotency key (nullable)
+    private Long dedupUntilEpoch; // key is enforced until this time
+    private transient ProcessTreeUsage.Usage usage; // last run's process-tree usage, set by Worker
 
     public Job() {
     }
@@ -138,6 +146,38 @@ public class Job {
         this.timeoutSeconds = timeoutSeconds;
     }
 
+    public String getQueue() {
+        return queue;
+    }
+
+    public void setQueue(String queue) {
+        this.queue = queue == null || queue.isBlank() ? DEFAULT_QUEUE : queue;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant == null || tenant.isBlank() ? DEFAULT_TENANT : tenant;
+    }
+
+    public String getDedupKey() {
+        return dedupKey;
+    }
+
+    public void setDedupKey(String dedupKey) {
+        this.dedupKey = dedupKey == null || dedupKey.isBlank() ? null : dedupKey;
+    }
+
+    public Long getDedupUntilEpoch() {
+        return dedupUntilEpoch;
+    }
+
+    public void setDedupUntilEpoch(Long dedupUntilEpoch) {
+        this.dedupUntilEpoch = dedupUntilEpoch;
+    }
+
     @Override
     public String toString() {
         return "Job{" +
@@ -150,7 +190,17 @@ public class Job {
                 ", updatedAt=" + updatedAt +
                 ", availableAtEpoch=" + availableAtEpoch +
                 ", priority=" + priority +
+                ", queue='" + queue + '\'' +
+                ", tenant='" + tenant + '\'' +
                 ", timeoutSeconds=" + timeoutSeconds +
                 '}';
     }
-}
\ No newline at end of file
+
+    ProcessTreeUsage.Usage getUsage() {
+        return usage;
+    }
+
+    void setUsage(ProcessTreeUsage.Usage usage) {
+        this.usage = usage;
+    }
+}
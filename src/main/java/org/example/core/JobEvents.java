@@ -0,0 +1,140 @@
+package org.example.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the job lifecycle, so a recording
+ * ({@code worker start --jfr FILE}, or any {@code -XX:StartFlightRecording})
+ * shows claims, runs and DB commits next to GC, I/O and thread scheduling.
+ * Emitters use the {@code begin()/end()/shouldCommit()} pattern: with no
+ * recording running, {@code shouldCommit()} is false, the fields are never set
+ * and the JIT drops the allocation, so the disabled cost is near zero.
+ * Retry and DLQ events carry no worker id; JFR's event thread identifies it.
+ */
+final class JobEvents {
+    private static final int MAX_TEXT = 256;
+
+    private JobEvents() {
+    }
+
+    static String clip(String s) {
+        return s == null || s.length() <= MAX_TEXT ? s : s.substring(0, MAX_TEXT) + "...";
+    }
+
+    @Name("queuectl.JobClaim")
+    @Label("Job Claim")
+    @Category({ "QueueCTL", "Job" })
+    @Description("A worker's claim call; jobId is null when nothing was ready")
+    @StackTrace(false)
+    static final class Claim extends Event {
+        @Label("Job Id")
+        String jobId;
+        @Label("Worker Id")
+        String workerId;
+        @Label("Queue")
+        String queue;
+    }
+
+    @Name("queuectl.JobSpawn")
+    @Label("Job Spawn")
+    @Category({ "QueueCTL", "Job" })
+    @Description("Starting a job: forking /bin/sh, handing it to a pooled child, or starting a java: handler")
+    @StackTrace(false)
+    static final class Spawn extends Event {
+        @Label("Job Id")
+        String jobId;
+        @Label("Worker Id")
+        String workerId;
+        @Label("Kind")
+        @Description("shell, pool or handler")
+        String kind;
+        @Label("Command")
+        String command;
+    }
+
+    @Name("queuectl.JobExit")
+    @Label("Job Exit")
+    @Category({ "QueueCTL", "Job" })
+    @Description("A job run from start to exit (or timeout kill)")
+    @StackTrace(false)
+    static final class Exit extends Event {
+        @Label("Job Id")
+        String jobId;
+        @Label("Worker Id")
+        String workerId;
+        @Label("Exit Code")
+        int exitCode;
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+
+    @Name("queuectl.JobOutputCapture")
+    @Label("Job Output Capture")
+    @Category({ "QueueCTL", "Job" })
+    @Description("Draining the job's captured stdout/stderr after exit")
+    @StackTrace(false)
+    static final class OutputCapture extends Event {
+        @Label("Job Id")
+        String jobId;
+        @Label("Worker Id")
+        String workerId;
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("queuectl.DbCommit")
+    @Label("DB Commit")
+    @Category({ "QueueCTL", "Database" })
+    @Description("COMMIT or ROLLBACK of a SQLite transaction, including any wait for the write lock")
+    @StackTrace(false)
+    static final class DbCommit extends Event {
+        @Label("Statement")
+        String statement;
+        @Label("Lock Wait")
+        @Timespan(Timespan.MICROSECONDS)
+        long lockWait;
+        @Label("Busy Retries")
+        long busyRetries;
+    }
+
+    @Name("queuectl.JobRetryScheduled")
+    @Label("Job Retry Scheduled")
+    @Category({ "QueueCTL", "Job" })
+    @Description("A failed attempt put back to PENDING with backoff")
+    @StackTrace(false)
+    static final class RetryScheduled extends Event {
+        @Label("Job Id")
+        String jobId;
+        @Label("Attempt")
+        int attempt;
+        @Label("Max Retries")
+        int maxRetries;
+        @Label("Backoff")
+        @Timespan(Timespan.SECONDS)
+        long backoff;
+        @Label("Error")
+        String error;
+    }
+
+    @Name("queuectl.JobDeadLettered")
+    @Label("Job Moved To DLQ")
+    @Category({ "QueueCTL", "Job" })
+    @Description("A failed attempt with no retries left; the job is now DEAD")
+    @StackTrace(false)
+    static final class DeadLettered extends Event {
+        @Label("Job Id")
+        String jobId;
+        @Label("Attempts")
+        int attempts;
+        @Label("Error")
+        String error;
+    }
+}
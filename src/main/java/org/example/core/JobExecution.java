@@ -0,0 +1,37 @@
+package org.example.core;
+
+/**
+ * A started job as seen by {@link Worker}: a {@code /bin/sh -c} process, a request
+ * to a pre-warmed {@link ProcessPool} child, or an in-process {@link JobHandler}.
+ * The worker drives all three the same way (poll, timeout, output capture), so
+ * retry and DLQ handling do not care which it was.
+ */
+interface JobExecution {
+    /**
+     * Wait up to {@code timeoutMs} for the job to finish.
+     *
+     * @return the exit code (0 = success), or null if still running
+     */
+    Integer waitFor(long timeoutMs) throws InterruptedException;
+
+    /** Stop the job after a timeout. */
+    void kill();
+
+    /** Captured stdout/stderr; waits briefly for capture to drain. */
+    String output();
+
+    /**
+     * The OS process running only this job, for resource accounting; null for
+     * in-process handlers and pooled children, which outlive the job.
+     */
+    default ProcessHandle process() {
+        return null;
+    }
+
+    static JobExecution start(Job job) throws Exception {
+        if (JobHandlers.isHandlerCommand(job.getCommand()))
+            return JobHandlers.start(job);
+        JobExecution pooled = ProcessPool.start(job.getCommand());
+        return pooled != null ? pooled : new ShellExecution(job.getCommand());
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.core;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * In-process job implementation, discovered with {@link java.util.ServiceLoader}
+ * (list implementations in {@code META-INF/services/org.example.core.JobHandler}).
+ * A job whose command is {@code java:<name>?key=value&...} runs {@link #handle}
+ * on a virtual thread in the worker JVM instead of forking {@code /bin/sh}.
+ * {@code <name>} is either {@link #name()} or the implementation's class name.
+ * <p>
+ * Timeouts interrupt the handler thread, so long-running handlers should honour
+ * interruption. Retries, DLQ and logging behave exactly as for shell jobs.
+ */
+public interface JobHandler {
+    /** Short name used in {@code java:<name>} commands. */
+    String name();
+
+    /**
+     * Run one job.
+     *
+     * @param args decoded query parameters of the command
+     * @param out  captured as the job output
+     * @return exit code; 0 completes the job, anything else is a failed attempt
+     * @throws Exception treated as exit code 1 with the exception in the output
+     */
+    int handle(Map<String, String> args, PrintWriter out) throws Exception;
+}
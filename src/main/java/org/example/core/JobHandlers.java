@@ -0,0 +1,103 @@
+package org.example.core;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/** Registry of {@link JobHandler}s loaded once per JVM, plus {@code java:} command parsing. */
+public class JobHandlers {
+    public static final String PREFIX = "java:";
+    private static volatile Map<String, JobHandler> handlers;
+
+    public static boolean isHandlerCommand(String command) {
+        return command != null && command.startsWith(PREFIX);
+    }
+
+    public static Map<String, JobHandler> all() {
+        Map<String, JobHandler> m = handlers;
+        if (m == null) {
+            synchronized (JobHandlers.class) {
+                m = handlers;
+                if (m == null) {
+                    m = new HashMap<>();
+                    for (JobHandler h : ServiceLoader.load(JobHandler.class)) {
+                        m.put(h.name(), h);
+                        m.put(h.getClass().getName(), h);
+                    }
+                    handlers = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    static JobExecution start(Job job) {
+        String spec = job.getCommand().substring(PREFIX.length());
+        int q = spec.indexOf('?');
+        String name = q < 0 ? spec : spec.substring(0, q);
+        Map<String, String> args = parseArgs(q < 0 ? "" : spec.substring(q + 1));
+        JobHandler handler = all().get(name);
+        return new HandlerExecution(handler, name, args);
+    }
+
+    static Map<String, String> parseArgs(String query) {
+        Map<String, String> args = new LinkedHashMap<>();
+        if (query.isEmpty())
+            return args;
+        for (String part : query.split("&")) {
+            if (part.isEmpty())
+                continue;
+            String[] kv = part.split("=", 2);
+            args.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                    kv.length > 1 ? URLDecoder.decode(kv[1], StandardCharsets.UTF_8) : "");
+        }
+        return args;
+    }
+
+    /** Handler running on its own virtual thread; output goes to an in-memory writer. */
+    static class HandlerExecution implements JobExecution {
+        private final StringWriter buf = new StringWriter();
+        private final Thread thread;
+        private volatile Integer exitCode;
+
+        HandlerExecution(JobHandler handler, String name, Map<String, String> args) {
+            PrintWriter out = new PrintWriter(buf, true);
+            thread = Thread.ofVirtual().name("handler-" + name).start(() -> {
+                if (handler == null) {
+                    out.println("No JobHandler registered for '" + name + "'");
+                    exitCode = 127;
+                    return;
+                }
+                try {
+                    exitCode = handler.handle(args, out);
+                } catch (Throwable t) {
+                    t.printStackTrace(out);
+                    exitCode = 1;
+                } finally {
+                    out.flush();
+                }
+            });
+        }
+
+        @Override
+        public Integer waitFor(long timeoutMs) throws InterruptedException {
+            thread.join(Math.max(1, timeoutMs));
+            return thread.isAlive() ? null : (exitCode == null ? 1 : exitCode);
+        }
+
+        @Override
+        public void kill() {
+            thread.interrupt();
+        }
+
+        @Override
+        public String output() {
+            return buf.toString();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.core;
+
+/**
+ * In-process callbacks from {@link Worker}, called synchronously on the worker
+ * thread, so implementations must be cheap and must not throw. Registered with
+ * {@link Worker#addListener}.
+ */
+public interface JobListener {
+    /** A claimed job is about to run. */
+    default void onStart(Job job) {
+    }
+
+    /**
+     * The job's result has been stored; {@code exitCode} -999 means timeout. The
+     * worker claimed it at {@code claimedAtMs} (wall clock) and {@code nanos} have
+     * passed since (monotonic), so listeners need no per-job state of their own.
+     */
+    void onFinish(Job job, int exitCode, long claimedAtMs, long nanos);
+}
@@ -0,0 +1,59 @@
+package org.example.core;
+
+/**
+ * Base of the per-JVM recorders that buffer what the {@link Worker}s report and
+ * write it to the DB every {@link #intervalMs()} and once more on shutdown.
+ * {@link #start} registers the listener and runs the flush loop on a daemon
+ * thread; {@link #stop} ends it and saves whatever is still buffered.
+ */
+public abstract class JobRecorder implements JobListener, Runnable {
+    private final String threadName;
+    private final String what;
+    private volatile boolean stop;
+
+    /** {@code what} names the data in error messages, e.g. "latency snapshot". */
+    protected JobRecorder(String threadName, String what) {
+        this.threadName = threadName;
+        this.what = what;
+    }
+
+    /** Time between flushes; read before each sleep, so config changes apply. */
+    protected abstract long intervalMs();
+
+    /** Write what has been buffered; {@code last} is the shutdown flush, after which nothing is recorded. */
+    public abstract void flush(boolean last);
+
+    /** Register with the workers of this JVM and start the flush thread. */
+    public static <R extends JobRecorder> R start(R recorder) {
+        Worker.addListener(recorder);
+        Thread t = new Thread(recorder, ((JobRecorder) recorder).threadName);
+        t.setDaemon(true);
+        t.start();
+        return recorder;
+    }
+
+    @Override
+    public void run() {
+        while (!stop) {
+            try {
+                Thread.sleep(intervalMs());
+                if (!stop)
+                    flush(false);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Failed to save " + what + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** End the flush loop and save what is left; errors are reported, not thrown. */
+    public void stop() {
+        stop = true;
+        try {
+            flush(true);
+        } catch (Exception e) {
+            System.err.println("Failed to save " + what + ": " + e.getMessage());
+        }
+    }
+}
@@ -5,20 +5,229 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JobRepository {
-    private final int backoffBase;
+    public static final int DEFAULT_LEASE_SECONDS = 30;
+
+    private static final String JOB_COLUMNS = "id,command,state,attempts,max_retries,created_at,updated_at,available_at,last_error,output,priority,run_at,timeout_seconds,queue,tenant,dedup_key,dedup_until";
+
+    /**
+     * Atomic per-queue concurrency check appended to the claim UPDATE: the row is
+     * only taken while fewer than queue.&lt;name&gt;.max_concurrency jobs of its queue
+     * are PROCESSING. Evaluated in the same statement (SQLite has a single writer),
+     * so two claimers can never overshoot the limit.
+     */
+    private static final String CONCURRENCY_GUARD = " AND (SELECT COUNT(1) FROM jobs p WHERE p.state='PROCESSING' AND p.queue=jobs.queue) < "
+            + "IFNULL((SELECT CAST(value AS INTEGER) FROM config WHERE key='queue.' || jobs.queue || '.max_concurrency' AND CAST(value AS INTEGER) > 0), "
+            + Long.MAX_VALUE + ")";
+
+    private volatile int backoffBase;
+    private volatile int leaseSeconds = DEFAULT_LEASE_SECONDS;
+    private final AtomicInteger queueCursor = new AtomicInteger();
+    private final ConfigRepository config = new ConfigRepository();
+    private final FairScheduler fairScheduler = new FairScheduler(JobRepository::pendingTenants, config);
 
     public JobRepository(int backoffBase) {
         this.backoffBase = Math.max(2, backoffBase);
         Database.init();
     }
 
-    public void createJob(Job job) {
-        String sql = "INSERT INTO jobs (id, command, state, attempts, max_retries, created_at, updated_at, available_at, priority, run_at, timeout_seconds) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+    /** Update the retry backoff base; applies to the next failed attempt. */
+    public void setBackoffBase(int backoffBase) {
+        this.backoffBase = Math.max(2, backoffBase);
+    }
+
+    /**
+     * Lease window for claimed jobs. A claim holds the job for this long and the
+     * owning worker renews it while the job runs; once it lapses the reaper hands
+     * the job back to PENDING.
+     */
+    public void setLeaseSeconds(int leaseSeconds) {
+        this.leaseSeconds = Math.max(5, leaseSeconds);
+    }
+
+    public int getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    /** Default window for idempotency keys, overridable with {@code dedup_window_seconds}. */
+    public static final int DEFAULT_DEDUP_WINDOW_SECONDS = 86400;
+
+    /** The job that stands for an enqueue request, and whether it was already there. */
+    public record EnqueueResult(String jobId, boolean duplicate) {
+    }
+
+    /**
+     * Insert a job. If it carries an idempotency key that a job inside its window
+     * already holds, nothing is inserted and that job's id comes back with
+     * {@code duplicate = true}.
+     *
+     * @throws IllegalStateException if the job id is already taken
+     */
+    public EnqueueResult createJob(Job job) {
+        try (Connection c = Database.getConnection()) {
+            // one transaction, so the arrival counter costs no extra commit
+            c.setAutoCommit(false);
+            try (Inserter ins = new Inserter(c)) {
+                EnqueueResult result = ins.insert(job, 0);
+                ins.recordArrivals();
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to insert job", e);
+        }
+    }
+
+    /** Insert many jobs in one transaction; results are in input order. */
+    public List<EnqueueResult> createJobs(List<Job> jobs) {
+        List<EnqueueResult> out = new ArrayList<>(jobs.size());
+        try (Connection c = Database.getConnection(); Statement s = c.createStatement()) {
+            s.execute("BEGIN IMMEDIATE");
+            try (Inserter ins = new Inserter(c)) {
+                for (Job job : jobs)
+                    out.add(ins.insert(job, 0));
+                ins.recordArrivals();
+                s.execute("COMMIT");
+            } catch (SQLException | RuntimeException e) {
+                s.execute("ROLLBACK");
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to insert jobs", e);
+        }
+        return out;
+    }
+
+    /**
+     * Insert a job that runs only after every job in {@code parentIds} has
+     * COMPLETED. Parents that are already complete don't count; if none remain the
+     * job is PENDING straight away, otherwise BLOCKED until
+     * {@link #markJobCompleted} releases it. Runs under BEGIN IMMEDIATE so a parent
+     * completing concurrently is either seen as complete here or sees the edge.
+     *
+     * @throws IllegalArgumentException if a parent does not exist
+     */
+    public EnqueueResult createJob(Job job, List<String> parentIds) {
+        if (parentIds == null || parentIds.isEmpty())
+            return createJob(job);
+        // one edge per parent, so a repeated id must not count twice either
+        Set<String> parents = new LinkedHashSet<>(parentIds);
+        try (Connection c = Database.getConnection(); Statement s = c.createStatement()) {
+            s.execute("BEGIN IMMEDIATE");
+            try {
+                int pending = 0;
+                try (PreparedStatement ps = c.prepareStatement("SELECT state FROM jobs WHERE id=?")) {
+                    for (String parent : parents) {
+                        if (parent.equals(job.getId()))
+                            throw new IllegalArgumentException("job cannot depend on itself: " + parent);
+                        ps.setString(1, parent);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next())
+                                throw new IllegalArgumentException("unknown parent job: " + parent);
+                            if (!JobState.COMPLETED.name().equals(rs.getString(1)))
+                                pending++;
+                        }
+                    }
+                }
+                if (pending > 0)
+                    job.setState(JobState.BLOCKED);
+                EnqueueResult result;
+                try (Inserter ins = new Inserter(c)) {
+                    result = ins.insert(job, pending);
+                    ins.recordArrivals();
+                }
+                if (!result.duplicate()) {
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "INSERT OR IGNORE INTO job_deps(parent_id, child_id) VALUES (?, ?)")) {
+                        for (String parent : parents) {
+                            ps.setString(1, parent);
+                            ps.setString(2, job.getId());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                s.execute("COMMIT");
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                s.execute("ROLLBACK");
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to insert job", e);
+        }
+    }
+
+    EnqueueResult insertJob(Connection c, Job job, int pendingParents) throws SQLException {
+        try (Inserter ins = new Inserter(c)) {
+            EnqueueResult result = ins.insert(job, pendingParents);
+            ins.recordArrivals();
+            return result;
+        }
+    }
+
+    /**
+     * Job insert statements prepared once per connection, so bulk inserts reuse
+     * them. The INSERT is a single {@code ON CONFLICT DO NOTHING} statement against
+     * the primary key and the unique dedup index; only a conflict costs a follow-up
+     * query to tell a duplicate key from a taken id.
+     */
+    private final class Inserter implements AutoCloseable {
+        private static final String INSERT = "INSERT INTO jobs (id, command, state, attempts, max_retries, created_at, updated_at, available_at, priority, run_at, timeout_seconds, queue, tenant, pending_parents, dedup_key, dedup_until) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+        private final Connection c;
+        private final PreparedStatement insert;
+        private PreparedStatement expire;
+        private PreparedStatement lookup;
+        private final Map<String, Map<Integer, Integer>> arrivals = new HashMap<>();
+        private final long dedupWindow = config.getInt("dedup_window_seconds", DEFAULT_DEDUP_WINDOW_SECONDS);
+
+        Inserter(Connection c) throws SQLException {
+            this.c = c;
+            this.insert = c.prepareStatement(INSERT);
+        }
+
+        EnqueueResult insert(Job job, int pendingParents) throws SQLException {
             long now = Instant.now().getEpochSecond();
+            String key = job.getDedupKey();
+            if (key != null) {
+                if (job.getDedupUntilEpoch() == null)
+                    job.setDedupUntilEpoch(now + dedupWindow);
+                // fresh keys (the common case) skip releasing an expired holder
+                if (DedupFilter.mightContain(key))
+                    expire(key, now);
+            }
+            if (tryInsert(job, pendingParents, now)) {
+                if (key != null)
+                    DedupFilter.put(key);
+                inserted(job);
+                return new EnqueueResult(job.getId(), false);
+            }
+            if (key != null) {
+                DedupFilter.put(key);
+                String holder = liveHolder(key, now);
+                if (holder != null)
+                    return new EnqueueResult(holder, true);
+                // held by an expired job this JVM had not seen: release it and retry once
+                if (expire(key, now) > 0 && tryInsert(job, pendingParents, now)) {
+                    inserted(job);
+                    return new EnqueueResult(job.getId(), false);
+                }
+            }
+            throw new IllegalStateException("job id already exists: " + job.getId());
+        }
+
+        private boolean tryInsert(Job job, int pendingParents, long now) throws SQLException {
+            long t = System.nanoTime();
+            PreparedStatement ps = insert;
             ps.setString(1, job.getId());
             ps.setString(2, job.getCommand());
             ps.setString(3, job.getState().name());
@@ -34,28 +243,247 @@ public class JobRepository {
                 ps.setLong(10, job.getRunAtEpoch());
             }
             ps.setInt(11, job.getTimeoutSeconds());
+            ps.setString(12, job.getQueue());
+            ps.setString(13, job.getTenant());
+            ps.setInt(14, pendingParents);
+            ps.setString(15, job.getDedupKey());
+            if (job.getDedupUntilEpoch() == null)
+                ps.setNull(16, Types.INTEGER);
+            else
+                ps.setLong(16, job.getDedupUntilEpoch());
+            boolean inserted = ps.executeUpdate() == 1;
+            Metrics.DB_SECONDS.since("insert", t);
+            return inserted;
+        }
+
+        private void inserted(Job job) {
+            Metrics.ENQUEUED.inc(job.getQueue());
+            // BLOCKED children arrive in bulk when released and are not counted
+            if (job.getState() == JobState.PENDING)
+                arrivals.computeIfAbsent(job.getQueue(), k -> new HashMap<>()).merge(job.getPriority(), 1, Integer::sum);
+        }
+
+        /** Add this inserter's PENDING jobs to {@link QueueRates}, in the caller's transaction. */
+        void recordArrivals() throws SQLException {
+            for (Map.Entry<String, Map<Integer, Integer>> q : arrivals.entrySet())
+                for (Map.Entry<Integer, Integer> p : q.getValue().entrySet())
+                    QueueRates.arrived(c, q.getKey(), p.getKey(), p.getValue());
+            arrivals.clear();
+        }
+
+        private int expire(String key, long now) throws SQLException {
+            if (expire == null)
+                expire = c.prepareStatement("UPDATE jobs SET dedup_key = NULL WHERE dedup_key = ? AND dedup_until <= ?");
+            expire.setString(1, key);
+            expire.setLong(2, now);
+            return expire.executeUpdate();
+        }
+
+        private String liveHolder(String key, long now) throws SQLException {
+            if (lookup == null)
+                lookup = c.prepareStatement("SELECT id FROM jobs WHERE dedup_key = ? AND dedup_until > ?");
+            lookup.setString(1, key);
+            lookup.setLong(2, now);
+            try (ResultSet rs = lookup.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            insert.close();
+            if (expire != null)
+                expire.close();
+            if (lookup != null)
+                lookup.close();
+        }
+    }
+
+    /**
+     * Atomically claim a pending job from any queue and return it, or null if none available.
+     */
+    public Job claimPendingJob(String workerId) {
+        return claimPendingJob(workerId, null);
+    }
+
+    /**
+     * Atomically claim a pending job from one of the given queues (null/empty = all
+     * queues), honouring per-queue concurrency and rate limits. The order is chosen
+     * by the {@code claim_policy} config: {@code strict} (default) takes the highest
+     * priority first; {@code fair} picks the tenant by weighted deficit round-robin
+     * and ages priorities within it (see {@link FairScheduler}).
+     */
+    public Job claimPendingJob(String workerId, List<String> queues) {
+        JobEvents.Claim event = new JobEvents.Claim();
+        event.begin();
+        long t = System.nanoTime();
+        Job job = claimNext(workerId, queues);
+        Metrics.CLAIM_SECONDS.since(null, t);
+        event.end();
+        if (event.shouldCommit()) {
+            event.workerId = workerId;
+            if (job != null) {
+                event.jobId = job.getId();
+                event.queue = job.getQueue();
+            }
+            event.commit();
+        }
+        if (job != null)
+            Metrics.CLAIMED.inc(job.getQueue());
+        return job;
+    }
+
+    private Job claimNext(String workerId, List<String> queues) {
+        if (FairScheduler.POLICY_FAIR.equalsIgnoreCase(config.get("claim_policy", FairScheduler.POLICY_STRICT)))
+            return claimFair(workerId, queues);
+        if (queues == null || queues.isEmpty())
+            return claimAny(workerId, null, null, 0);
+        // subscribed queues are tried round-robin so a busy queue cannot starve the
+        // others; each attempt is a seek on idx_jobs_queue_claim
+        int start = Math.floorMod(queueCursor.getAndIncrement(), queues.size());
+        for (int i = 0; i < queues.size(); i++) {
+            String queue = queues.get((start + i) % queues.size());
+            // rate-limited queues are skipped (deferred) rather than claimed and failed
+            if (!QueueRateLimiter.tryAcquire(queue))
+                continue;
+            Job job = claim(workerId, List.of(queue), List.of(), null, 0);
+            if (job != null)
+                return job;
+            QueueRateLimiter.refund(queue);
+        }
+        return null;
+    }
+
+    private Job claimFair(String workerId, List<String> queues) {
+        long aging = config.getInt("priority_aging_seconds", FairScheduler.DEFAULT_AGING_SECONDS);
+        for (int i = 0; i < FairScheduler.MAX_TENANTS_PER_CLAIM; i++) {
+            String tenant = fairScheduler.next();
+            if (tenant == null)
+                return null;
+            Job job = claimAny(workerId, queues, tenant, aging);
+            if (job != null)
+                return job;
+            fairScheduler.markIdle(tenant);
+        }
+        return null;
+    }
+
+    private Job claimAny(String workerId, List<String> queues, String tenant, long agingSeconds) {
+        List<String> excluded = new ArrayList<>(saturatedQueues());
+        Map<String, Long> throttled = QueueRateLimiter.throttledQueues();
+        excluded.addAll(throttled.keySet());
+        Job job = claim(workerId, queues, excluded, tenant, agingSeconds);
+        if (job == null && !throttled.isEmpty()) {
+            for (String queue : readyQueues(throttled.keySet(), queues, tenant))
+                QueueRateLimiter.deferred(queue, throttled.get(queue));
+        }
+        if (job != null && !QueueRateLimiter.tryAcquire(job.getQueue())) {
+            // lost the last token to another thread between the check and the claim
+            releaseClaim(job.getId(), workerId);
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Which of {@code candidates} (limited to {@code queues} and {@code tenant} when
+     * given) have a job ready now; run only after an empty claim, to tell a claim
+     * deferred by a rate limit from a queue that simply had nothing to do.
+     */
+    private static List<String> readyQueues(Set<String> candidates, List<String> queues, String tenant) {
+        List<String> check = new ArrayList<>(candidates);
+        if (queues != null && !queues.isEmpty())
+            check.retainAll(queues);
+        List<String> out = new ArrayList<>();
+        if (check.isEmpty())
+            return out;
+        String sql = "SELECT DISTINCT queue FROM jobs WHERE state='PENDING' AND available_at <= ? AND queue IN ("
+                + placeholders(check.size()) + ")" + (tenant != null ? " AND tenant = ?" : "");
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, Instant.now().getEpochSecond());
+            for (String q : check)
+                ps.setString(i++, q);
+            if (tenant != null)
+                ps.setString(i, tenant);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next())
+                    out.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /** Hand a claimed job back to PENDING without counting an attempt. */
+    public void releaseClaim(String jobId, String workerId) {
+        String sql = "UPDATE jobs SET state='PENDING', updated_at=?, locked_by=NULL, locked_at=NULL, lease_expires_at=NULL WHERE id=? AND locked_by=? AND state='PROCESSING'";
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, Instant.now().getEpochSecond());
+            ps.setString(2, jobId);
+            ps.setString(3, workerId);
             ps.executeUpdate();
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to insert job", e);
+            throw new RuntimeException(e);
         }
     }
 
     /**
-     * Atomically claim a pending job and return it, or null if none available.
+     * Single-statement claim. With {@code agingSeconds > 0} the pick compares two
+     * index-seek candidates, the highest priority and the longest waiting job, by
+     * priority + wait/agingSeconds, so an old low-priority job eventually wins
+     * without sorting the whole backlog.
      */
-    public Job claimPendingJob(String workerId) {
-        String update = "UPDATE jobs SET state='PROCESSING', locked_by=?, locked_at=?, updated_at=? WHERE id = (SELECT id FROM jobs WHERE state='PENDING' AND available_at <= ? ORDER BY priority DESC, available_at ASC, created_at ASC LIMIT 1)";
+    private Job claim(String workerId, List<String> queues, List<String> excludedQueues, String tenant,
+            long agingSeconds) {
+        StringBuilder where = new StringBuilder("state='PENDING' AND available_at <= ?");
+        if (queues != null && !queues.isEmpty())
+            where.append(" AND queue IN (").append(placeholders(queues.size())).append(")");
+        if (!excludedQueues.isEmpty())
+            where.append(" AND queue NOT IN (").append(placeholders(excludedQueues.size())).append(")");
+        if (tenant != null)
+            where.append(" AND tenant = ?");
+        String pick;
+        if (agingSeconds > 0) {
+            pick = "SELECT id FROM ("
+                    + "SELECT * FROM (SELECT id, priority, available_at, created_at FROM jobs WHERE " + where
+                    + " ORDER BY priority DESC, available_at ASC, created_at ASC LIMIT 1) UNION ALL "
+                    + "SELECT * FROM (SELECT id, priority, available_at, created_at FROM jobs WHERE " + where
+                    + " ORDER BY available_at ASC, created_at ASC LIMIT 1)"
+                    + ") ORDER BY priority + (? - available_at) * 1.0 / ? DESC, available_at ASC, created_at ASC LIMIT 1";
+        } else {
+            pick = "SELECT id FROM jobs WHERE " + where + " ORDER BY priority DESC, available_at ASC, created_at ASC LIMIT 1";
+        }
+        String update = "UPDATE jobs SET state='PROCESSING', locked_by=?, locked_at=?, updated_at=?, lease_expires_at=? WHERE id = ("
+                + pick + ")" + CONCURRENCY_GUARD;
+        long t = System.nanoTime();
         try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(update)) {
             long now = Instant.now().getEpochSecond();
-            ps.setString(1, workerId);
-            ps.setLong(2, now);
-            ps.setLong(3, now);
-            ps.setLong(4, now);
+            int i = 1;
+            ps.setString(i++, workerId);
+            ps.setLong(i++, now);
+            ps.setLong(i++, now);
+            ps.setLong(i++, now + leaseSeconds);
+            for (int rep = 0; rep < (agingSeconds > 0 ? 2 : 1); rep++) {
+                ps.setLong(i++, now);
+                if (queues != null)
+                    for (String q : queues)
+                        ps.setString(i++, q);
+                for (String q : excludedQueues)
+                    ps.setString(i++, q);
+                if (tenant != null)
+                    ps.setString(i++, tenant);
+            }
+            if (agingSeconds > 0) {
+                ps.setLong(i++, now);
+                ps.setLong(i++, agingSeconds);
+            }
             int affected = ps.executeUpdate();
             if (affected == 0)
                 return null;
             // select the row with this worker/locked_at
-            String sel = "SELECT id,command,state,attempts,max_retries,created_at,updated_at,available_at,last_error,output,priority,run_at,timeout_seconds FROM jobs WHERE locked_by = ? AND locked_at = ? LIMIT 1";
+            String sel = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE locked_by = ? AND locked_at = ? LIMIT 1";
             try (PreparedStatement ps2 = c.prepareStatement(sel)) {
                 ps2.setString(1, workerId);
                 ps2.setLong(2, now);
@@ -66,52 +494,481 @@ public class JobRepository {
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to claim job", e);
+        } finally {
+            Metrics.DB_SECONDS.since("claim", t);
         }
         return null;
     }
 
-    public void markJobCompleted(String jobId, String output) {
-        String sql = "UPDATE jobs SET state='COMPLETED', updated_at=?, output=?, locked_by=NULL, locked_at=NULL WHERE id = ?";
+    private static String placeholders(int n) {
+        return "?,".repeat(n - 1) + "?";
+    }
+
+    /**
+     * Ready backlog for the given queues (null/empty = all): PENDING jobs already
+     * available and how long the oldest of them has waited.
+     */
+    public Backlog backlog(List<String> queues) {
+        long now = Instant.now().getEpochSecond();
+        String sql = "SELECT COUNT(1), MIN(available_at) FROM jobs WHERE state='PENDING' AND available_at <= ?"
+                + (queues == null || queues.isEmpty() ? "" : " AND queue IN (" + placeholders(queues.size()) + ")");
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, now);
+            if (queues != null)
+                for (String q : queues)
+                    ps.setString(i++, q);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    int ready = rs.getInt(1);
+                    long oldest = rs.getLong(2);
+                    return new Backlog(ready, ready == 0 ? 0 : Math.max(0, now - oldest));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return new Backlog(0, 0);
+    }
+
+    public record Backlog(int ready, long oldestWaitSeconds) {
+    }
+
+    /** Tenants that currently have PENDING jobs; feeds the fair scheduler's active set. */
+    public static List<String> pendingTenants() {
+        String sql = "SELECT DISTINCT tenant FROM jobs WHERE state='PENDING'";
+        List<String> out = new ArrayList<>();
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next())
+                out.add(rs.getString(1));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /**
+     * Queues with a configured limit that are already at it; excluded up front by
+     * all-queue claims so the pick does not land on a row the guard would reject.
+     */
+    private List<String> saturatedQueues() {
+        Map<String, Integer> limits = new HashMap<>();
+        for (Map.Entry<String, String> e : config.values().entrySet()) {
+            String k = e.getKey();
+            if (!k.startsWith("queue.") || !k.endsWith(".max_concurrency"))
+                continue;
+            try {
+                int limit = Integer.parseInt(e.getValue().trim());
+                if (limit > 0)
+                    limits.put(k.substring("queue.".length(), k.length() - ".max_concurrency".length()), limit);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        if (limits.isEmpty())
+            return List.of();
+        List<String> out = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : processingCountsByQueue().entrySet()) {
+            Integer limit = limits.get(e.getKey());
+            if (limit != null && e.getValue() >= limit)
+                out.add(e.getKey());
+        }
+        return out;
+    }
+
+    public Map<String, Integer> processingCountsByQueue() {
+        String sql = "SELECT queue, COUNT(1) AS c FROM jobs WHERE state='PROCESSING' GROUP BY queue";
+        Map<String, Integer> m = new HashMap<>();
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next())
+                m.put(rs.getString("queue"), rs.getInt("c"));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return m;
+    }
+
+    /**
+     * Extend the lease on every job held by this worker. Jobs with a timeout are
+     * never renewed past locked_at + timeout + lease, so a wedged worker that keeps
+     * heartbeating still loses the job eventually.
+     */
+    public void renewLeases(String workerId) {
+        String sql = "UPDATE jobs SET lease_expires_at = CASE WHEN timeout_seconds > 0 "
+                + "THEN MIN(?1 + ?2, locked_at + timeout_seconds + ?2) ELSE ?1 + ?2 END "
+                + "WHERE state='PROCESSING' AND locked_by=?3";
         try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setLong(1, Instant.now().getEpochSecond());
+            ps.setInt(2, leaseSeconds);
+            ps.setString(3, workerId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * {@link #renewLeases} for a worker running a batch, whose members share one
+     * {@code locked_at}. Only the member running now ({@code runningId}, null
+     * between members) is capped, from its own start; the others are waiting to
+     * start or to be acked with the batch, and the worker times each one out itself.
+     */
+    public void renewBatchLeases(String workerId, String runningId, long runningSinceSec) {
+        String sql = "UPDATE jobs SET lease_expires_at = CASE WHEN id = ?4 AND timeout_seconds > 0 "
+                + "THEN MIN(?1 + ?2, ?5 + timeout_seconds + ?2) ELSE ?1 + ?2 END "
+                + "WHERE state='PROCESSING' AND locked_by=?3";
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, Instant.now().getEpochSecond());
+            ps.setInt(2, leaseSeconds);
+            ps.setString(3, workerId);
+            ps.setString(4, runningId);
+            ps.setLong(5, runningSinceSec);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Return PROCESSING jobs whose lease lapsed (owner crashed or stopped renewing)
+     * to PENDING, counting the lost run as an attempt; jobs out of retries go to
+     * DEAD. Served by idx_jobs_state_lease.
+     *
+     * @return number of jobs reclaimed
+     */
+    public int reapExpiredLeases() {
+        String expired = "state='PROCESSING' AND lease_expires_at < ?1";
+        String sql = "UPDATE jobs SET state = CASE WHEN attempts + 1 > max_retries THEN 'DEAD' ELSE 'PENDING' END, "
+                + "attempts = attempts + 1, last_error = 'lease expired (worker ' || IFNULL(locked_by, '?') || ' lost)', "
+                + "available_at = ?1, updated_at = ?1, locked_by = NULL, locked_at = NULL, lease_expires_at = NULL "
+                + "WHERE " + expired;
+        long t = System.nanoTime();
+        try (Connection c = Database.getConnection(); Statement s = c.createStatement()) {
+            s.execute("BEGIN IMMEDIATE");
+            try (PreparedStatement requeued = c.prepareStatement("SELECT queue, priority, COUNT(1) FROM jobs WHERE "
+                    + expired + " AND attempts + 1 <= max_retries GROUP BY queue, priority");
+                    PreparedStatement dying = c.prepareStatement("SELECT id, queue, attempts + 1, "
+                            + "'lease expired (worker ' || IFNULL(locked_by, '?') || ' lost)' FROM jobs WHERE "
+                            + expired + " AND attempts + 1 > max_retries");
+                    PreparedStatement ps = c.prepareStatement(sql)) {
+                long now = Instant.now().getEpochSecond();
+                requeued.setLong(1, now);
+                recordArrivals(c, requeued);
+                // counted and reported after COMMIT, like a DEAD from failAttempt
+                List<Reaped> dead = new ArrayList<>();
+                dying.setLong(1, now);
+                try (ResultSet rs = dying.executeQuery()) {
+                    while (rs.next())
+                        dead.add(new Reaped(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getString(4)));
+                }
+                ps.setLong(1, now);
+                int reaped = ps.executeUpdate();
+                s.execute("COMMIT");
+                Metrics.LEASES_REAPED.inc(null, reaped);
+                for (Reaped d : dead) {
+                    Metrics.DEAD.inc(d.queue());
+                    JobEvents.DeadLettered event = new JobEvents.DeadLettered();
+                    if (event.shouldCommit()) {
+                        event.jobId = d.jobId();
+                        event.attempts = d.attempts();
+                        event.error = d.error();
+                        event.commit();
+                    }
+                }
+                return reaped;
+            } catch (SQLException | RuntimeException e) {
+                s.execute("ROLLBACK");
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to reap expired leases", e);
+        } finally {
+            Metrics.DB_SECONDS.since("reap_leases", t);
+        }
+    }
+
+    /** A job the reaper moved to DEAD. */
+    private record Reaped(String jobId, String queue, int attempts, String error) {
+    }
+
+    /** Pass each (queue, priority, count) row of {@code grouped} to {@link QueueRates#arrived}. */
+    private static void recordArrivals(Connection c, PreparedStatement grouped) throws SQLException {
+        try (ResultSet rs = grouped.executeQuery()) {
+            while (rs.next())
+                QueueRates.arrived(c, rs.getString(1), rs.getInt(2), rs.getInt(3));
+        }
+    }
+
+    /**
+     * Mark a job COMPLETED and, in the same transaction, release children it was the
+     * last parent of. Returns false, changing nothing, when the job is no longer
+     * PROCESSING under {@code workerId} (its lease was reaped and it may have been
+     * claimed again): the result is lost rather than applied to someone else's run.
+     */
+    public boolean markJobCompleted(String jobId, String workerId, String output) {
+        long t = System.nanoTime();
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                boolean applied = complete(c, jobId, workerId, output, Instant.now().getEpochSecond());
+                c.commit();
+                return applied;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            Metrics.DB_SECONDS.since("complete", t);
+        }
+    }
+
+    private static final String COMPLETE_SQL = "UPDATE jobs SET state='COMPLETED', updated_at=?, output=?, locked_by=NULL, locked_at=NULL, lease_expires_at=NULL WHERE id = ? AND state='PROCESSING' AND locked_by=?";
+
+    private boolean complete(Connection c, String jobId, String workerId, String output, long now) throws SQLException {
+        // served() is fenced the same way, so a lost result counts nothing
+        QueueRates.served(c, jobId, workerId, now);
+        try (PreparedStatement ps = c.prepareStatement(COMPLETE_SQL)) {
+            ps.setLong(1, now);
             ps.setString(2, output);
             ps.setString(3, jobId);
-            ps.executeUpdate();
+            ps.setString(4, workerId);
+            if (ps.executeUpdate() == 0)
+                return false;
+        }
+        Metrics.COMPLETED.inc();
+        releaseChildren(c, jobId, now);
+        return true;
+    }
+
+    /**
+     * Count down this parent's children (via the job_deps primary key, so cost is
+     * the parent's fan-out) and move those with no unfinished parents left from
+     * BLOCKED to PENDING.
+     */
+    private static void releaseChildren(Connection c, String parentId, long now) throws SQLException {
+        String children = "SELECT child_id FROM job_deps WHERE parent_id = ?1";
+        String ready = "id IN (" + children + ") AND state='BLOCKED' AND pending_parents = 0";
+        try (PreparedStatement dec = c.prepareStatement(
+                "UPDATE jobs SET pending_parents = pending_parents - 1 WHERE id IN (" + children + ") AND pending_parents > 0");
+                PreparedStatement released = c.prepareStatement(
+                        "SELECT queue, priority, COUNT(1) FROM jobs WHERE " + ready + " GROUP BY queue, priority");
+                PreparedStatement rel = c.prepareStatement(
+                        "UPDATE jobs SET state='PENDING', available_at = MAX(available_at, ?2), updated_at = ?2 WHERE " + ready)) {
+            dec.setString(1, parentId);
+            if (dec.executeUpdate() == 0)
+                return;
+            // released children arrive now, not when they were enqueued BLOCKED
+            released.setString(1, parentId);
+            recordArrivals(c, released);
+            rel.setString(1, parentId);
+            rel.setLong(2, now);
+            rel.executeUpdate();
+        }
+    }
+
+    /**
+     * Count a failed run of {@code job} by {@code workerId}; returns false, changing
+     * nothing, when the job is no longer PROCESSING under that worker.
+     */
+    public boolean handleFailedAttempt(Job job, String workerId, String error) {
+        long t = System.nanoTime();
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                boolean applied = failAttempt(c, job, workerId, error, Instant.now().getEpochSecond());
+                c.commit();
+                return applied;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            Metrics.DB_SECONDS.since("fail", t);
         }
     }
 
-    public void handleFailedAttempt(Job job, String error) {
+    /** Count a failed run: schedule a retry with exponential backoff, or move to DEAD. */
+    private boolean failAttempt(Connection c, Job job, String workerId, String error, long now) throws SQLException {
         int attempts = job.getAttempts() + 1;
-        long now = Instant.now().getEpochSecond();
+        QueueRates.served(c, job.getId(), workerId, now);
         if (attempts > job.getMaxRetries()) {
             // move to dead
-            String sql = "UPDATE jobs SET state='DEAD', attempts=?, last_error=?, updated_at=?, locked_by=NULL, locked_at=NULL WHERE id=?";
-            try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-                ps.setInt(1, attempts);
-                ps.setString(2, error);
-                ps.setLong(3, now);
-                ps.setString(4, job.getId());
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+            String sql = "UPDATE jobs SET state='DEAD', attempts=attempts+1, last_error=?, updated_at=?, locked_by=NULL, locked_at=NULL, lease_expires_at=NULL WHERE id=? AND state='PROCESSING' AND locked_by=?";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, error);
+                ps.setLong(2, now);
+                ps.setString(3, job.getId());
+                ps.setString(4, workerId);
+                if (ps.executeUpdate() == 0)
+                    return false;
+            }
+            Metrics.FAILED.inc(job.getQueue());
+            Metrics.DEAD.inc(job.getQueue());
+            JobEvents.DeadLettered event = new JobEvents.DeadLettered();
+            if (event.shouldCommit()) {
+                event.jobId = job.getId();
+                event.attempts = attempts;
+                event.error = JobEvents.clip(error);
+                event.commit();
             }
         } else {
             // schedule retry with exponential backoff
             long delay = (long) Math.pow(backoffBase, attempts);
             long avail = now + delay;
-            String sql = "UPDATE jobs SET state='PENDING', attempts=?, last_error=?, available_at=?, updated_at=?, locked_by=NULL, locked_at=NULL WHERE id=?";
-            try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-                ps.setInt(1, attempts);
-                ps.setString(2, error);
-                ps.setLong(3, avail);
-                ps.setLong(4, now);
-                ps.setString(5, job.getId());
-                ps.executeUpdate();
+            String sql = "UPDATE jobs SET state='PENDING', attempts=attempts+1, last_error=?, available_at=?, updated_at=?, locked_by=NULL, locked_at=NULL, lease_expires_at=NULL WHERE id=? AND state='PROCESSING' AND locked_by=?";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, error);
+                ps.setLong(2, avail);
+                ps.setLong(3, now);
+                ps.setString(4, job.getId());
+                ps.setString(5, workerId);
+                if (ps.executeUpdate() == 0)
+                    return false;
+            }
+            Metrics.FAILED.inc(job.getQueue());
+            Metrics.RETRIED.inc(job.getQueue());
+            QueueRates.arrived(c, job.getQueue(), job.getPriority(), 1);
+            JobEvents.RetryScheduled event = new JobEvents.RetryScheduled();
+            if (event.shouldCommit()) {
+                event.jobId = job.getId();
+                event.attempt = attempts;
+                event.maxRetries = job.getMaxRetries();
+                event.backoff = delay;
+                event.error = JobEvents.clip(error);
+                event.commit();
+            }
+        }
+        return true;
+    }
+
+    /** {@code queue.<name>.batch_size}; 1 (the default) disables batching for the queue. */
+    public int batchSize(String queue) {
+        return Math.max(1, config.getInt("queue." + queue + ".batch_size", 1));
+    }
+
+    /**
+     * Claim up to {@code max} more PENDING shell jobs from the same queue as
+     * {@code first}, for one batched run. Runs under BEGIN IMMEDIATE so the queue's
+     * {@code max_concurrency} headroom read here cannot be taken by another worker
+     * before the UPDATE; each extra job also needs a rate-limit token.
+     */
+    public List<Job> claimBatch(String workerId, Job first, int max) {
+        List<Job> out = new ArrayList<>();
+        // one rate-limit token held per candidate, given back if the claim fails
+        List<Job> candidates = new ArrayList<>();
+        if (max <= 0)
+            return out;
+        String queue = first.getQueue();
+        long t = System.nanoTime();
+        try (Connection c = Database.getConnection(); Statement s = c.createStatement()) {
+            s.execute("BEGIN IMMEDIATE");
+            try {
+                long now = Instant.now().getEpochSecond();
+                int limit = max;
+                int maxConcurrency = config.getInt("queue." + queue + ".max_concurrency", 0);
+                if (maxConcurrency > 0) {
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "SELECT COUNT(1) FROM jobs WHERE state='PROCESSING' AND queue=?")) {
+                        ps.setString(1, queue);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                            limit = Math.min(limit, maxConcurrency - rs.getInt(1));
+                        }
+                    }
+                }
+                if (limit > 0) {
+                    // over-fetch a little: java: and pooled commands don't batch
+                    String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE state='PENDING' AND queue=? AND available_at <= ?"
+                            + " AND command NOT LIKE 'java:%' ORDER BY priority DESC, available_at ASC, created_at ASC LIMIT ?";
+                    try (PreparedStatement ps = c.prepareStatement(sql)) {
+                        ps.setString(1, queue);
+                        ps.setLong(2, now);
+                        ps.setInt(3, limit * 2);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next() && candidates.size() < limit) {
+                                Job j = rowToJob(rs);
+                                if (!BatchExecution.isBatchable(j))
+                                    continue;
+                                // an empty bucket stays empty for the rest of this loop
+                                if (!QueueRateLimiter.tryAcquire(queue))
+                                    break;
+                                candidates.add(j);
+                            }
+                        }
+                    }
+                }
+                String update = "UPDATE jobs SET state='PROCESSING', locked_by=?, locked_at=?, updated_at=?, lease_expires_at=? WHERE id=? AND state='PENDING'";
+                try (PreparedStatement ps = c.prepareStatement(update)) {
+                    for (Job j : candidates) {
+                        ps.setString(1, workerId);
+                        ps.setLong(2, now);
+                        ps.setLong(3, now);
+                        ps.setLong(4, now + leaseSeconds);
+                        ps.setString(5, j.getId());
+                        ps.addBatch();
+                        j.setState(JobState.PROCESSING);
+                        out.add(j);
+                    }
+                    ps.executeBatch();
+                }
+                s.execute("COMMIT");
+            } catch (SQLException | RuntimeException e) {
+                s.execute("ROLLBACK");
+                for (int i = 0; i < candidates.size(); i++)
+                    QueueRateLimiter.refund(queue);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to claim batch", e);
+        } finally {
+            Metrics.DB_SECONDS.since("claim_batch", t);
+        }
+        Metrics.CLAIMED.inc(queue, out.size());
+        return out;
+    }
+
+    /**
+     * Outcome of one job in a batched run. {@code exitCode} null means the job never
+     * started (the batch was cut short) and it goes back to PENDING without an attempt.
+     */
+    public record BatchResult(Job job, Integer exitCode, String output, String error) {
+    }
+
+    /** Apply all results of a batched run in one transaction. */
+    public void ackBatch(String workerId, List<BatchResult> results) {
+        String release = "UPDATE jobs SET state='PENDING', updated_at=?, locked_by=NULL, locked_at=NULL, lease_expires_at=NULL WHERE id=? AND locked_by=? AND state='PROCESSING'";
+        long t = System.nanoTime();
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement back = c.prepareStatement(release)) {
+                long now = Instant.now().getEpochSecond();
+                for (BatchResult r : results) {
+                    if (r.exitCode() == null) {
+                        back.setLong(1, now);
+                        back.setString(2, r.job().getId());
+                        back.setString(3, workerId);
+                        back.addBatch();
+                    } else if (r.exitCode() == 0) {
+                        complete(c, r.job().getId(), workerId, r.output(), now);
+                    } else {
+                        failAttempt(c, r.job(), workerId, r.error(), now);
+                    }
+                }
+                back.executeBatch();
+                c.commit();
             } catch (SQLException e) {
-                throw new RuntimeException(e);
+                c.rollback();
+                throw e;
             }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to ack batch", e);
+        } finally {
+            Metrics.DB_SECONDS.since("ack_batch", t);
         }
     }
 
@@ -119,9 +976,9 @@ public class JobRepository {
         List<Job> out = new ArrayList<>();
         String sql;
         if (stateFilter == null)
-            sql = "SELECT id,command,state,attempts,max_retries,created_at,updated_at,available_at,last_error,output,priority,run_at,timeout_seconds FROM jobs ORDER BY created_at DESC";
+            sql = "SELECT " + JOB_COLUMNS + " FROM jobs ORDER BY created_at DESC";
         else
-            sql = "SELECT id,command,state,attempts,max_retries,created_at,updated_at,available_at,last_error,output,priority,run_at,timeout_seconds FROM jobs WHERE state = ? ORDER BY created_at DESC";
+            sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE state = ? ORDER BY created_at DESC";
         try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
             if (stateFilter != null)
                 ps.setString(1, stateFilter.toUpperCase());
@@ -136,7 +993,7 @@ public class JobRepository {
     }
 
     public Job getJobById(String id) {
-        String sql = "SELECT id,command,state,attempts,max_retries,created_at,updated_at,available_at,last_error,output,priority,run_at,timeout_seconds FROM jobs WHERE id = ?";
+        String sql = "SELECT " + JOB_COLUMNS + " FROM jobs WHERE id = ?";
         try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, id);
             try (ResultSet rs = ps.executeQuery()) {
@@ -149,14 +1006,37 @@ public class JobRepository {
         return null;
     }
 
-    public void retryDeadJob(String id) {
-        String sql = "UPDATE jobs SET state='PENDING', attempts=0, available_at=?, updated_at=?, last_error=NULL WHERE id = ?";
-        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            long now = Instant.now().getEpochSecond();
-            ps.setLong(1, now);
-            ps.setLong(2, now);
-            ps.setString(3, id);
-            ps.executeUpdate();
+    /**
+     * Move a DEAD job back to PENDING with a fresh attempt budget, counting it as
+     * an arrival in the same transaction.
+     *
+     * @return false if the job does not exist or is not DEAD
+     */
+    public boolean retryDeadJob(String id) {
+        String sql = "UPDATE jobs SET state='PENDING', attempts=0, available_at=?, updated_at=?, last_error=NULL WHERE id = ? AND state='DEAD'";
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql);
+                    PreparedStatement job = c.prepareStatement("SELECT queue, priority FROM jobs WHERE id = ?")) {
+                long now = Instant.now().getEpochSecond();
+                ps.setLong(1, now);
+                ps.setLong(2, now);
+                ps.setString(3, id);
+                if (ps.executeUpdate() == 0) {
+                    c.rollback();
+                    return false;
+                }
+                job.setString(1, id);
+                try (ResultSet rs = job.executeQuery()) {
+                    rs.next();
+                    QueueRates.arrived(c, rs.getString(1), rs.getInt(2), 1);
+                }
+                c.commit();
+                return true;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -178,8 +1058,9 @@ public class JobRepository {
     }
 
     public int activeWorkerCount() {
-        String sql = "SELECT COUNT(DISTINCT locked_by) AS w FROM jobs WHERE state='PROCESSING' AND locked_by IS NOT NULL";
+        String sql = "SELECT COUNT(DISTINCT locked_by) AS w FROM jobs WHERE state='PROCESSING' AND locked_by IS NOT NULL AND (lease_expires_at IS NULL OR lease_expires_at >= ?)";
         try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, Instant.now().getEpochSecond());
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next())
                     return rs.getInt("w");
@@ -215,6 +1096,11 @@ public class JobRepository {
                 j.setTimeoutSeconds(timeout);
         } catch (SQLException ignored) {
         }
+        j.setQueue(rs.getString("queue"));
+        j.setTenant(rs.getString("tenant"));
+        j.setDedupKey(rs.getString("dedup_key"));
+        long dedupUntil = rs.getLong("dedup_until");
+        j.setDedupUntilEpoch(rs.wasNull() ? null : dedupUntil);
         return j;
     }
 }
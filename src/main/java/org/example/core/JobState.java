@@ -2,6 +2,7 @@ package org.example.core;
 
 public enum JobState {
     PENDING,
+    BLOCKED, // waiting on parent jobs (enqueue --after)
     PROCESSING,
     COMPLETED,
     FAILED,
@@ -0,0 +1,165 @@
+package org.example.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: values below 128 are
+ * exact, above that each power of two is split into 64 buckets, so any recorded
+ * value is reported within ~1.6% (2 significant digits) across the full long
+ * range in ~30 KiB. Recording is lock-free (one atomic increment).
+ * Units are up to the caller; queuectl records microseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 128;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SIZE = SUB_BUCKETS + HALF * (64 - 7);
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        total.increment();
+        sum.add(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // retry
+        }
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS)
+            return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - 6;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((v >>> shift) - HALF);
+    }
+
+    /** Largest value that maps to bucket {@code i}. */
+    static long highestEquivalent(int i) {
+        if (i < SUB_BUCKETS)
+            return i;
+        int shift = (i - SUB_BUCKETS) / HALF + 1;
+        long sub = (i - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    /** Recordings whose bucket lies entirely at or below {@code value}. */
+    public long countAtOrBelow(long value) {
+        long n = 0;
+        for (int i = 0; i < SIZE && highestEquivalent(i) <= value; i++)
+            n += counts.get(i);
+        return n;
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** Value at the given percentile (0-100), or 0 if empty. */
+    public long percentile(double p) {
+        long n = total.sum();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestEquivalent(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** Add all of {@code other}'s recordings to this histogram. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < SIZE; i++) {
+            long c = other.counts.get(i);
+            if (c != 0)
+                counts.addAndGet(i, c);
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        long m;
+        long om = other.max.get();
+        while (om > (m = max.get()) && !max.compareAndSet(m, om)) {
+            // retry
+        }
+    }
+
+    /**
+     * Compact text form for storage: {@code count sum max} followed by the
+     * non-empty buckets as {@code index:count} pairs, e.g. {@code 3 42 20 3:1,19:2}.
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(total.sum()).append(' ').append(sum.sum()).append(' ').append(max.get()).append(' ');
+        boolean first = true;
+        for (int i = 0; i < SIZE; i++) {
+            long c = counts.get(i);
+            if (c == 0)
+                continue;
+            if (!first)
+                sb.append(',');
+            sb.append(i).append(':').append(c);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    /** Inverse of {@link #encode()}; throws IllegalArgumentException on malformed input. */
+    public static LatencyHistogram decode(String text) {
+        LatencyHistogram h = new LatencyHistogram();
+        try {
+            String[] parts = text.trim().split(" ");
+            h.total.add(Long.parseLong(parts[0]));
+            h.sum.add(Long.parseLong(parts[1]));
+            h.max.set(Long.parseLong(parts[2]));
+            if (parts.length > 3 && !parts[3].isEmpty()) {
+                for (String pair : parts[3].split(",")) {
+                    int colon = pair.indexOf(':');
+                    h.counts.addAndGet(Integer.parseInt(pair.substring(0, colon)), Long.parseLong(pair.substring(colon + 1)));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("bad histogram: " + text, e);
+        }
+        return h;
+    }
+
+    /** count, mean, p50, p90, p99, p999 and max, divided by {@code scale} (e.g. 1000 for µs to ms). */
+    public Map<String, Object> summary(double scale) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", count());
+        m.put("mean", round(mean() / scale));
+        m.put("p50", round(percentile(50) / scale));
+        m.put("p90", round(percentile(90) / scale));
+        m.put("p99", round(percentile(99) / scale));
+        m.put("p999", round(percentile(99.9) / scale));
+        m.put("max", round(max() / scale));
+        return m;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 1000) / 1000.0;
+    }
+}
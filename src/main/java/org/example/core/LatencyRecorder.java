@@ -0,0 +1,165 @@
+package org.example.core;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-JVM job latency histograms, keyed by queue and priority:
+ * <ul>
+ * <li>{@code queue_wait} – {@code available_at} to claim (1s resolution, since
+ * {@code available_at} is stored in seconds)</li>
+ * <li>{@code execution} – claim to result stored</li>
+ * <li>{@code total} – {@code available_at} to result stored</li>
+ * </ul>
+ * Values are milliseconds in {@link LatencyHistogram}s. Every
+ * {@code latency_snapshot_seconds} (default 60) the interval's histograms are
+ * written to {@code latency_snapshots} and a fresh interval starts, so any time
+ * range can be answered by merging the snapshots inside it, across all worker
+ * JVMs. Snapshots older than {@code latency_retention_hours} (default 24) are
+ * pruned on each flush.
+ */
+public class LatencyRecorder extends JobRecorder {
+    public static final String QUEUE_WAIT = "queue_wait";
+    public static final String EXECUTION = "execution";
+    public static final String TOTAL = "total";
+    public static final List<String> METRICS = List.of(QUEUE_WAIT, EXECUTION, TOTAL);
+    public static final int DEFAULT_SNAPSHOT_SECONDS = 60;
+    public static final int DEFAULT_RETENTION_HOURS = 24;
+
+    /** Histogram key; {@code priority} is null when grouped by queue only, {@code queue} null when by priority. */
+    public record Key(String queue, Integer priority) {
+    }
+
+    private final ConfigRepository config = new ConfigRepository();
+    private final String source = ManagementFactory.getRuntimeMXBean().getName();
+    private Map<Key, LatencyHistogram[]> interval = new ConcurrentHashMap<>();
+
+    public LatencyRecorder() {
+        super("latency-recorder", "latency snapshot");
+    }
+
+    @Override
+    public void onFinish(Job job, int exitCode, long claimedAtMs, long nanos) {
+        long availableMs = job.getAvailableAtEpoch() * 1000;
+        long wait = Math.max(0, claimedAtMs - availableMs);
+        long exec = nanos / 1_000_000;
+        Key key = new Key(job.getQueue(), job.getPriority());
+        synchronized (this) {
+            LatencyHistogram[] h = interval.computeIfAbsent(key,
+                    k -> new LatencyHistogram[] { new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram() });
+            h[0].record(wait);
+            h[1].record(exec);
+            h[2].record(wait + exec);
+        }
+    }
+
+    @Override
+    protected long intervalMs() {
+        return Math.max(1, config.getInt("latency_snapshot_seconds", DEFAULT_SNAPSHOT_SECONDS)) * 1000L;
+    }
+
+    /** Write the current interval (if any jobs finished in it) and start a new one. */
+    @Override
+    public void flush(boolean last) {
+        Map<Key, LatencyHistogram[]> done;
+        synchronized (this) {
+            if (interval.isEmpty())
+                return;
+            done = interval;
+            interval = new ConcurrentHashMap<>();
+        }
+        long now = System.currentTimeMillis();
+        long retentionMs = config.getInt("latency_retention_hours", DEFAULT_RETENTION_HOURS) * 3_600_000L;
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ins = c.prepareStatement(
+                    "INSERT INTO latency_snapshots(ts_ms, source, queue, priority, metric, count, histogram) VALUES(?,?,?,?,?,?,?)");
+                    PreparedStatement prune = c.prepareStatement("DELETE FROM latency_snapshots WHERE ts_ms < ?")) {
+                for (Map.Entry<Key, LatencyHistogram[]> e : done.entrySet()) {
+                    for (int i = 0; i < METRICS.size(); i++) {
+                        LatencyHistogram h = e.getValue()[i];
+                        ins.setLong(1, now);
+                        ins.setString(2, source);
+                        ins.setString(3, e.getKey().queue());
+                        ins.setInt(4, e.getKey().priority());
+                        ins.setString(5, METRICS.get(i));
+                        ins.setLong(6, h.count());
+                        ins.setString(7, h.encode());
+                        ins.addBatch();
+                    }
+                }
+                ins.executeBatch();
+                prune.setLong(1, now - retentionMs);
+                prune.executeUpdate();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Merge the snapshots taken at or after {@code sinceMs}, optionally for one
+     * queue, grouped by {@code by}: {@code queue}, {@code priority},
+     * {@code queue,priority} or {@code all}. Histograms are in METRICS order.
+     */
+    public static Map<Key, LatencyHistogram[]> query(long sinceMs, String queue, String by) {
+        if (!List.of("queue", "priority", "queue,priority", "all").contains(by))
+            throw new IllegalArgumentException("by must be queue, priority, queue,priority or all");
+        boolean byQueue = by.startsWith("queue");
+        boolean byPriority = by.endsWith("priority");
+        Map<Key, LatencyHistogram[]> out = new TreeMap<>(
+                Comparator.comparing((Key k) -> k.queue() == null ? "" : k.queue())
+                        .thenComparing(k -> k.priority() == null ? 0 : -k.priority()));
+        String sql = "SELECT queue, priority, metric, histogram FROM latency_snapshots WHERE ts_ms >= ?"
+                + (queue != null ? " AND queue = ?" : "");
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, sinceMs);
+            if (queue != null)
+                ps.setString(2, queue);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int m = METRICS.indexOf(rs.getString("metric"));
+                    if (m < 0)
+                        continue;
+                    Key key = new Key(byQueue ? rs.getString("queue") : null, byPriority ? rs.getInt("priority") : null);
+                    LatencyHistogram[] h = out.computeIfAbsent(key,
+                            k -> new LatencyHistogram[] { new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram() });
+                    h[m].add(LatencyHistogram.decode(rs.getString("histogram")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /** Rows for display/JSON: one map per group with queue, priority and a summary per metric. */
+    public static List<Map<String, Object>> summaries(Map<Key, LatencyHistogram[]> groups) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<Key, LatencyHistogram[]> e : groups.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (e.getKey().queue() != null)
+                row.put("queue", e.getKey().queue());
+            if (e.getKey().priority() != null)
+                row.put("priority", e.getKey().priority());
+            for (int i = 0; i < METRICS.size(); i++)
+                row.put(METRICS.get(i), e.getValue()[i].summary(1));
+            rows.add(row);
+        }
+        return rows;
+    }
+}
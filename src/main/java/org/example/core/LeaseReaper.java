@@ -0,0 +1,41 @@
+package org.example.core;
+
+/**
+ * Periodically hands jobs with lapsed leases back to the queue. Every worker
+ * JVM runs one; the reap is one short indexed transaction, so concurrent
+ * reapers in other processes are harmless.
+ */
+public class LeaseReaper implements Runnable {
+    private final JobRepository repo;
+    private volatile boolean stop;
+
+    public LeaseReaper(JobRepository repo) {
+        this.repo = repo;
+    }
+
+    public void requestStop() {
+        stop = true;
+    }
+
+    @Override
+    public void run() {
+        while (!stop) {
+            try {
+                int reaped = repo.reapExpiredLeases();
+                if (reaped > 0)
+                    System.out.println("[reaper] Reclaimed " + reaped + " job(s) with expired leases");
+                // check twice per lease window so an orphan waits at most ~1.5x the lease
+                Thread.sleep(Math.max(1, repo.getLeaseSeconds() / 2) * 1000L);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Lease reaper error: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        }
+    }
+}
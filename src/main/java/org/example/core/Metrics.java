@@ -0,0 +1,201 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide counters and histograms for {@code /metrics}, rendered in the
+ * Prometheus text format (0.0.4) or OpenMetrics 1.0. Everything is updated in
+ * memory on the hot path (one {@link LongAdder} or {@link LatencyHistogram}
+ * increment), so a scrape never scans tables; values are per JVM and reset on
+ * restart, as Prometheus counters expect. Metrics that only the database knows,
+ * such as job state counts, are registered as gauges by the serving process
+ * with a cached supplier.
+ */
+public final class Metrics {
+    /** Histogram bucket bounds in seconds. */
+    private static final double[] BUCKETS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+            5, 10 };
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+    public static final Counter ENQUEUED = counter("queuectl_jobs_enqueued", "Jobs inserted (duplicates excluded)", "queue");
+    public static final Counter CLAIMED = counter("queuectl_jobs_claimed", "Jobs claimed by workers", "queue");
+    public static final Counter COMPLETED = counter("queuectl_jobs_completed", "Jobs marked COMPLETED", null);
+    public static final Counter FAILED = counter("queuectl_job_attempts_failed", "Failed attempts (retried or dead)", "queue");
+    public static final Counter RETRIED = counter("queuectl_jobs_retried", "Failed attempts scheduled for retry", "queue");
+    public static final Counter DEAD = counter("queuectl_jobs_dead", "Jobs moved to the DLQ", "queue");
+    public static final Counter LEASES_REAPED = counter("queuectl_leases_reaped", "PROCESSING jobs reclaimed after their lease lapsed", null);
+    public static final Histogram CLAIM_SECONDS = histogram("queuectl_claim_duration_seconds",
+            "Worker claim calls, including empty polls", null);
+    public static final Histogram DB_SECONDS = histogram("queuectl_db_operation_duration_seconds",
+            "JobRepository database operations", "op");
+
+    static {
+        gauge("queuectl_claims_throttled", "counter", "Claims skipped by a queue rate limit", "queue",
+                QueueRateLimiter::throttledCounts);
+    }
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help, String label) {
+        Counter c = new Counter(name, help, label);
+        FAMILIES.put(name, c);
+        return c;
+    }
+
+    public static Histogram histogram(String name, String help, String label) {
+        Histogram h = new Histogram(name, help, label);
+        FAMILIES.put(name, h);
+        return h;
+    }
+
+    /**
+     * Register (or replace) a metric read from {@code values} at scrape time,
+     * keyed by label value ({@code label} null: a single entry, key ignored).
+     * {@code type} is {@code gauge} or {@code counter}.
+     */
+    public static void gauge(String name, String type, String help, String label,
+            Supplier<? extends Map<String, ? extends Number>> values) {
+        FAMILIES.put(name, new Func(name, type, help, label, values));
+    }
+
+    /** Render every registered family; {@code openMetrics} selects OpenMetrics 1.0 over Prometheus 0.0.4. */
+    public static String scrape(boolean openMetrics) {
+        StringBuilder sb = new StringBuilder();
+        for (Family f : new TreeMap<>(FAMILIES).values())
+            f.write(sb, openMetrics);
+        if (openMetrics)
+            sb.append("# EOF\n");
+        return sb.toString();
+    }
+
+    private abstract static class Family {
+        final String name;
+        final String help;
+        final String label;
+
+        Family(String name, String help, String label) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+        }
+
+        abstract void write(StringBuilder sb, boolean openMetrics);
+
+        void header(StringBuilder sb, String type, boolean openMetrics) {
+            // OpenMetrics names a counter family without its _total suffix
+            String n = "counter".equals(type) && !openMetrics ? name + "_total" : name;
+            sb.append("# HELP ").append(n).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(n).append(' ').append(type).append('\n');
+        }
+
+        String labels(String value, String extra) {
+            List<String> parts = new ArrayList<>();
+            if (label != null)
+                parts.add(label + "=\"" + escape(value) + "\"");
+            if (extra != null)
+                parts.add(extra);
+            return parts.isEmpty() ? "" : "{" + String.join(",", parts) + "}";
+        }
+    }
+
+    public static final class Counter extends Family {
+        private final Map<String, LongAdder> values = new ConcurrentHashMap<>();
+
+        Counter(String name, String help, String label) {
+            super(name, help, label);
+        }
+
+        public void inc() {
+            inc("", 1);
+        }
+
+        public void inc(String labelValue) {
+            inc(labelValue, 1);
+        }
+
+        public void inc(String labelValue, long n) {
+            values.computeIfAbsent(labelValue == null ? "" : labelValue, k -> new LongAdder()).add(n);
+        }
+
+        @Override
+        void write(StringBuilder sb, boolean openMetrics) {
+            header(sb, "counter", openMetrics);
+            if (values.isEmpty() && label == null)
+                sb.append(name).append("_total 0\n");
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(values).entrySet())
+                sb.append(name).append("_total").append(labels(e.getKey(), null)).append(' ')
+                        .append(e.getValue().sum()).append('\n');
+        }
+    }
+
+    /** Latency histogram; observations in nanoseconds, exposed in seconds. */
+    public static final class Histogram extends Family {
+        private final Map<String, LatencyHistogram> values = new ConcurrentHashMap<>();
+
+        Histogram(String name, String help, String label) {
+            super(name, help, label);
+        }
+
+        /** Record the time since {@code startNanos} (a {@link System#nanoTime()} value). */
+        public void since(String labelValue, long startNanos) {
+            values.computeIfAbsent(labelValue == null ? "" : labelValue, k -> new LatencyHistogram())
+                    .record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        @Override
+        void write(StringBuilder sb, boolean openMetrics) {
+            header(sb, "histogram", openMetrics);
+            for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(values).entrySet()) {
+                LatencyHistogram h = e.getValue();
+                for (double le : BUCKETS)
+                    sb.append(name).append("_bucket").append(labels(e.getKey(), "le=\"" + le + "\"")).append(' ')
+                            .append(h.countAtOrBelow((long) (le * 1_000_000))).append('\n');
+                sb.append(name).append("_bucket").append(labels(e.getKey(), "le=\"+Inf\"")).append(' ')
+                        .append(h.count()).append('\n');
+                sb.append(name).append("_count").append(labels(e.getKey(), null)).append(' ').append(h.count())
+                        .append('\n');
+                sb.append(name).append("_sum").append(labels(e.getKey(), null)).append(' ')
+                        .append(h.sum() / 1e6).append('\n');
+            }
+        }
+    }
+
+    private static final class Func extends Family {
+        private final String type;
+        private final Supplier<? extends Map<String, ? extends Number>> supplier;
+
+        Func(String name, String type, String help, String label,
+                Supplier<? extends Map<String, ? extends Number>> supplier) {
+            super(name, help, label);
+            this.type = type;
+            this.supplier = supplier;
+        }
+
+        @Override
+        void write(StringBuilder sb, boolean openMetrics) {
+            Map<String, ? extends Number> values;
+            try {
+                values = supplier.get();
+            } catch (RuntimeException e) {
+                // a failing source (e.g. DB locked) drops the family from this scrape only
+                return;
+            }
+            header(sb, type, openMetrics);
+            String n = "counter".equals(type) ? name + "_total" : name;
+            for (Map.Entry<String, ? extends Number> e : new TreeMap<>(values).entrySet())
+                sb.append(n).append(labels(e.getKey(), null)).append(' ').append(e.getValue()).append('\n');
+        }
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Serves {@link Metrics} as {@code GET /metrics}: from the web server, and from
+ * a worker JVM on its own port ({@code worker start --metrics-port}). Clients
+ * that accept {@code application/openmetrics-text} get OpenMetrics 1.0,
+ * everything else the Prometheus text format.
+ */
+public class MetricsExporter {
+    private static final String OPENMETRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    /** DB-backed gauges are re-read at most this often, however often Prometheus scrapes. */
+    private static final long DB_GAUGE_TTL_MS = 5000;
+
+    public static void handle(HttpExchange ex) throws IOException {
+        String accept = ex.getRequestHeaders().getFirst("Accept");
+        boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+        byte[] bytes = Metrics.scrape(openMetrics).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", openMetrics ? OPENMETRICS : PROMETHEUS);
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /** Standalone exporter with only {@code /metrics}, on a daemon thread. */
+    public static HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", MetricsExporter::handle);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Job counts by state and registered workers by status, read from the
+     * database (shared by all worker JVMs) through a short cache.
+     */
+    public static void registerDatabaseGauges(JobRepository repo) {
+        WorkerRegistry registry = new WorkerRegistry();
+        Metrics.gauge("queuectl_jobs", "gauge", "Jobs by state", "state", cached(() -> {
+            Map<String, Integer> m = new LinkedHashMap<>();
+            for (JobState s : JobState.values())
+                m.put(s.name(), 0);
+            m.putAll(repo.stateCounts());
+            return m;
+        }));
+        Metrics.gauge("queuectl_workers", "gauge", "Registered workers by status", "status", cached(() -> {
+            WorkerRegistry.Counts c = registry.counts();
+            return Map.of("idle", c.idle(), "busy", c.busy());
+        }));
+    }
+
+    /** Workers of this JVM by status. */
+    public static void registerPoolGauges(WorkerPool pool) {
+        Metrics.gauge("queuectl_pool_workers", "gauge", "Workers in this JVM by status", "status", () -> {
+            int busy = pool.busyCount();
+            return Map.of("idle", Math.max(0, pool.size() - busy), "busy", busy);
+        });
+    }
+
+    private static <T> Supplier<T> cached(Supplier<T> source) {
+        return new Supplier<>() {
+            private T value;
+            private long loadedAt;
+
+            @Override
+            public synchronized T get() {
+                long now = System.currentTimeMillis();
+                if (value == null || now - loadedAt >= DB_GAUGE_TTL_MS) {
+                    value = source.get();
+                    loadedAt = now;
+                }
+                return value;
+            }
+        };
+    }
+}
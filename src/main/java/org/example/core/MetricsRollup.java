@@ -0,0 +1,249 @@
+package org.example.core;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Long-term, downsampled history in {@code metric_rollups}: each worker JVM
+ * folds its perf samples and job completions into 10s buckets in memory, writes
+ * the finished buckets every 10s, and re-derives its own 1m and 1h buckets from
+ * the finer rows it just touched. Every row holds count, sum, min and max, so any
+ * resolution can answer rates, means and extremes, and rows from several JVMs
+ * ({@code source}) merge by adding.
+ * <p>
+ * Series:
+ * <ul>
+ * <li>{@code cpu_load}, {@code heap_used_bytes} – worker JVM samples (from
+ * {@link WorkerPerf})</li>
+ * <li>{@code jobs_completed}, {@code jobs_failed}, {@code jobs_timed_out} – one
+ * count per finished attempt, labelled by queue</li>
+ * <li>{@code job_duration_ms} – claim to result stored, labelled by queue</li>
+ * </ul>
+ * Each resolution has its own TTL: {@code rollup_retention_10s_hours} (default 6),
+ * {@code rollup_retention_1m_days} (7) and {@code rollup_retention_1h_days} (90).
+ * The same flush also drops {@code worker_perf} samples older than 15 minutes,
+ * which only stopped workers still have.
+ */
+public class MetricsRollup extends JobRecorder {
+    public static final int RES_10S = 10;
+    public static final int RES_1M = 60;
+    public static final int RES_1H = 3600;
+    public static final List<String> SERIES = List.of("cpu_load", "heap_used_bytes", "jobs_completed", "jobs_failed",
+            "jobs_timed_out", "job_duration_ms");
+    private static final long PERF_KEEP_MS = 15 * 60_000L;
+
+    /** One bucket of a series, merged over sources (and labels, unless filtered). */
+    public record Point(long bucketMs, long count, double sum, double min, double max) {
+        public double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+    }
+
+    private record Key(long bucketMs, String metric, String label) {
+    }
+
+    private static final class Agg {
+        long count;
+        double sum;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+
+        synchronized void add(double v) {
+            count++;
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+    }
+
+    private static final Map<Key, Agg> CURRENT = new ConcurrentHashMap<>();
+    private static volatile boolean installed;
+
+    private final ConfigRepository config = new ConfigRepository();
+    private final String source = ManagementFactory.getRuntimeMXBean().getName();
+
+    /** From now on this JVM accepts samples; start it with {@link JobRecorder#start}. */
+    public MetricsRollup() {
+        super("metrics-rollup", "metrics rollup");
+        installed = true;
+    }
+
+    /** Add one observation to the current 10s bucket; a no-op in JVMs without a rollup thread. */
+    static void record(String metric, String label, double value) {
+        if (!installed)
+            return;
+        long bucket = floor(System.currentTimeMillis(), RES_10S);
+        CURRENT.computeIfAbsent(new Key(bucket, metric, label == null ? "" : label), k -> new Agg()).add(value);
+    }
+
+    @Override
+    public void onFinish(Job job, int exitCode, long claimedAtMs, long nanos) {
+        String queue = job.getQueue();
+        record(exitCode == 0 ? "jobs_completed" : exitCode == -999 ? "jobs_timed_out" : "jobs_failed", queue, 1);
+        record("job_duration_ms", queue, nanos / 1_000_000.0);
+    }
+
+    @Override
+    protected long intervalMs() {
+        return RES_10S * 1000L;
+    }
+
+    /**
+     * Write finished 10s buckets (all of them, the current one included, when
+     * {@code all}), roll them up into 1m and 1h, and apply the TTLs.
+     */
+    @Override
+    public void flush(boolean all) {
+        long current = floor(System.currentTimeMillis(), RES_10S);
+        Map<Key, Agg> done = new java.util.HashMap<>();
+        for (Iterator<Map.Entry<Key, Agg>> it = CURRENT.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, Agg> e = it.next();
+            if (all || e.getKey().bucketMs() < current) {
+                done.put(e.getKey(), e.getValue());
+                it.remove();
+            }
+        }
+        long now = System.currentTimeMillis();
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                if (!done.isEmpty()) {
+                    long first = Long.MAX_VALUE;
+                    long last = Long.MIN_VALUE;
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "INSERT INTO metric_rollups(metric, res, bucket_ms, source, label, count, sum, min, max) "
+                                    + "VALUES(?,?,?,?,?,?,?,?,?) ON CONFLICT(metric, res, bucket_ms, source, label) DO UPDATE SET "
+                                    + "count = count + excluded.count, sum = sum + excluded.sum, "
+                                    + "min = MIN(min, excluded.min), max = MAX(max, excluded.max)")) {
+                        for (Map.Entry<Key, Agg> e : done.entrySet()) {
+                            Agg a = e.getValue();
+                            synchronized (a) {
+                                ps.setString(1, e.getKey().metric());
+                                ps.setInt(2, RES_10S);
+                                ps.setLong(3, e.getKey().bucketMs());
+                                ps.setString(4, source);
+                                ps.setString(5, e.getKey().label());
+                                ps.setLong(6, a.count);
+                                ps.setDouble(7, a.sum);
+                                ps.setDouble(8, a.min);
+                                ps.setDouble(9, a.max);
+                            }
+                            ps.addBatch();
+                            first = Math.min(first, e.getKey().bucketMs());
+                            last = Math.max(last, e.getKey().bucketMs());
+                        }
+                        ps.executeBatch();
+                    }
+                    rollUp(c, RES_10S, RES_1M, first, last);
+                    rollUp(c, RES_1M, RES_1H, first, last);
+                }
+                try (PreparedStatement prune = c.prepareStatement("DELETE FROM metric_rollups WHERE res = ? AND bucket_ms < ?")) {
+                    prune(prune, RES_10S, now - config.getInt("rollup_retention_10s_hours", 6) * 3_600_000L);
+                    prune(prune, RES_1M, now - config.getInt("rollup_retention_1m_days", 7) * 86_400_000L);
+                    prune(prune, RES_1H, now - config.getInt("rollup_retention_1h_days", 90) * 86_400_000L);
+                }
+                try (PreparedStatement ps = c.prepareStatement("DELETE FROM worker_perf WHERE ts_ms < ?")) {
+                    ps.setLong(1, now - PERF_KEEP_MS);
+                    ps.executeUpdate();
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Recompute this source's {@code to} buckets covering [first, last] from its {@code from} rows. */
+    private void rollUp(Connection c, int from, int to, long first, long last) throws SQLException {
+        long start = floor(first, to);
+        long end = floor(last, to) + to * 1000L;
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO metric_rollups(metric, res, bucket_ms, source, label, count, sum, min, max) "
+                        + "SELECT metric, ?, bucket_ms - bucket_ms % ?, source, label, SUM(count), SUM(sum), MIN(min), MAX(max) "
+                        + "FROM metric_rollups WHERE res = ? AND source = ? AND bucket_ms >= ? AND bucket_ms < ? "
+                        + "GROUP BY metric, bucket_ms - bucket_ms % ?, label "
+                        + "ON CONFLICT(metric, res, bucket_ms, source, label) DO UPDATE SET "
+                        + "count = excluded.count, sum = excluded.sum, min = excluded.min, max = excluded.max")) {
+            ps.setInt(1, to);
+            ps.setLong(2, to * 1000L);
+            ps.setInt(3, from);
+            ps.setString(4, source);
+            ps.setLong(5, start);
+            ps.setLong(6, end);
+            ps.setLong(7, to * 1000L);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void prune(PreparedStatement ps, int res, long beforeMs) throws SQLException {
+        ps.setInt(1, res);
+        ps.setLong(2, beforeMs);
+        ps.executeUpdate();
+    }
+
+    private static long floor(long ms, int res) {
+        return ms - Math.floorMod(ms, res * 1000L);
+    }
+
+    /**
+     * The resolution a dashboard should read for a window of {@code rangeMs}: the
+     * finest one that keeps it under ~1500 points and is still retained for the
+     * whole window under default TTLs.
+     */
+    public static int resolutionFor(long rangeMs) {
+        if (rangeMs <= 4 * 3_600_000L)
+            return RES_10S;
+        if (rangeMs <= 24 * 3_600_000L)
+            return RES_1M;
+        return RES_1H;
+    }
+
+    /** {@code 10s}, {@code 1m} or {@code 1h} to seconds. */
+    public static int parseResolution(String res) {
+        return switch (res) {
+            case "10s" -> RES_10S;
+            case "1m" -> RES_1M;
+            case "1h" -> RES_1H;
+            default -> throw new IllegalArgumentException("resolution must be 10s, 1m or 1h");
+        };
+    }
+
+    /**
+     * Buckets of {@code metric} at resolution {@code res} (seconds) from
+     * {@code sinceMs}, merged across JVMs and, unless {@code label} is given, labels.
+     */
+    public static List<Point> query(String metric, String label, int res, long sinceMs) {
+        if (!SERIES.contains(metric))
+            throw new IllegalArgumentException("metric must be one of " + String.join(", ", SERIES));
+        String sql = "SELECT bucket_ms, SUM(count) AS count, SUM(sum) AS sum, MIN(min) AS min, MAX(max) AS max "
+                + "FROM metric_rollups WHERE metric = ? AND res = ? AND bucket_ms >= ?"
+                + (label != null ? " AND label = ?" : "") + " GROUP BY bucket_ms ORDER BY bucket_ms";
+        List<Point> out = new ArrayList<>();
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, metric);
+            ps.setInt(2, res);
+            ps.setLong(3, floor(sinceMs, res));
+            if (label != null)
+                ps.setString(4, label);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next())
+                    out.add(new Point(rs.getLong("bucket_ms"), rs.getLong("count"), rs.getDouble("sum"),
+                            rs.getDouble("min"), rs.getDouble("max")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+}
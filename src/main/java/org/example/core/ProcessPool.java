@@ -0,0 +1,394 @@
+package org.example.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Pools of long-lived child processes, one pool per command template, so jobs
+ * that run the same interpreter with different arguments skip process and
+ * interpreter startup. Configured per pool name:
+ * <ul>
+ * <li>{@code pool.<name>.template} – command prefix to match, e.g. {@code python3 resize.py}</li>
+ * <li>{@code pool.<name>.command} – child to keep running (default: the template)</li>
+ * <li>{@code pool.<name>.size} – max children in this JVM (default 2)</li>
+ * <li>{@code pool.<name>.max_requests} – recycle a child after this many jobs (default 500)</li>
+ * </ul>
+ * Protocol (line based): for each job the worker writes the job command minus
+ * the template, as one line, to the child's stdin. The child writes the job
+ * output, then a line {@code ::queuectl-exit <code>}. A {@code ::ping} request
+ * must be answered with {@code ::queuectl-exit 0}; it is sent to children that
+ * have been idle for a while before reuse. A child that dies, times out or
+ * breaks the protocol is killed and replaced on demand.
+ * <p>
+ * Jobs that don't match a template, contain a newline, or find every child of
+ * their pool busy run as a plain {@code /bin/sh -c} process instead, so the
+ * child must behave like the command it stands in for. So do jobs whose
+ * arguments use shell syntax (any of {@code | & ; < > $ ` ( ) * ? [}, quotes or
+ * backslash): the child only sees plain text, so redirects, pipes, {@code &&},
+ * expansions and globs would silently not happen.
+ */
+public class ProcessPool {
+    static final String EXIT_MARKER = "::queuectl-exit ";
+    static final String PING = "::ping";
+    private static final long HEALTH_CHECK_IDLE_MS = 30_000;
+    private static final long PING_TIMEOUT_MS = 2_000;
+
+    private static final Pattern SHELL_SYNTAX = Pattern.compile("[|&;<>$`()*?\\[\"'\\\\]");
+    private static final ConfigRepository CONFIG = new ConfigRepository();
+    private static final Map<String, ProcessPool> POOLS = new ConcurrentHashMap<>();
+    private static volatile long configVersion = -1;
+    private static volatile boolean hookInstalled;
+
+    final String name;
+    final String template;
+    final String command;
+    final int size;
+    final int maxRequests;
+    private final ConcurrentLinkedDeque<Child> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder spawned = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean closed;
+
+    ProcessPool(String name, String template, String command, int size, int maxRequests) {
+        this.name = name;
+        this.template = template;
+        this.command = command;
+        this.size = size;
+        this.maxRequests = maxRequests;
+    }
+
+    /** Start {@code command} on a pooled child, or return null if it should run as a shell process. */
+    static JobExecution start(String command) {
+        syncConfig();
+        if (POOLS.isEmpty() || command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0)
+            return null;
+        for (ProcessPool pool : POOLS.values()) {
+            String args = pool.match(command);
+            if (args == null)
+                continue;
+            Child child = pool.checkout();
+            if (child == null) {
+                pool.fallbacks.increment();
+                return null;
+            }
+            return new PooledExecution(pool, child, args);
+        }
+        return null;
+    }
+
+    /**
+     * True for the keys that name a program a worker will start:
+     * {@code pool.<name>.command} and {@code pool.<name>.template} (the command
+     * defaults to it). Only the CLI may set them; the web config endpoint refuses.
+     */
+    public static boolean isCommandKey(String key) {
+        return key.startsWith("pool.") && (key.endsWith(".command") || key.endsWith(".template"));
+    }
+
+    /** True if some pool's template matches the command. */
+    static boolean isPooled(String command) {
+        syncConfig();
+        for (ProcessPool pool : POOLS.values())
+            if (pool.match(command) != null)
+                return true;
+        return false;
+    }
+
+    private String match(String cmd) {
+        if (cmd.equals(template))
+            return "";
+        if (!cmd.startsWith(template) || !Character.isWhitespace(cmd.charAt(template.length())))
+            return null;
+        String args = cmd.substring(template.length()).trim();
+        // anything the shell would interpret has to go through the shell
+        return SHELL_SYNTAX.matcher(args).find() ? null : args;
+    }
+
+    private Child checkout() {
+        Child c;
+        while ((c = idle.pollFirst()) != null) {
+            if (c.healthy())
+                return c;
+            discard(c);
+        }
+        while (true) {
+            int n = live.get();
+            if (n >= size || closed)
+                return null;
+            if (live.compareAndSet(n, n + 1))
+                break;
+        }
+        try {
+            Child fresh = new Child(command);
+            spawned.increment();
+            return fresh;
+        } catch (IOException e) {
+            live.decrementAndGet();
+            return null;
+        }
+    }
+
+    private void release(Child c, boolean ok) {
+        served.increment();
+        if (ok && (closed || c.requests >= maxRequests)) {
+            // recycled: let it exit on EOF rather than killing it mid-cleanup
+            c.retire();
+            live.decrementAndGet();
+            return;
+        }
+        if (!ok || !c.process.isAlive()) {
+            discard(c);
+            return;
+        }
+        c.lastUsedMs = System.currentTimeMillis();
+        // LIFO keeps a hot subset of children busy and lets the rest go idle
+        idle.addFirst(c);
+    }
+
+    private void discard(Child c) {
+        c.process.destroyForcibly();
+        live.decrementAndGet();
+    }
+
+    private void close() {
+        closed = true;
+        Child c;
+        while ((c = idle.pollFirst()) != null) {
+            c.retire();
+            live.decrementAndGet();
+        }
+    }
+
+    /** Per-pool counters since JVM start: served, spawned, fallbacks, live. */
+    public static Map<String, String> stats() {
+        Map<String, String> m = new HashMap<>();
+        POOLS.forEach((n, p) -> m.put(n, String.format("served=%d spawned=%d fallbacks=%d live=%d",
+                p.served.sum(), p.spawned.sum(), p.fallbacks.sum(), p.live.get())));
+        return m;
+    }
+
+    /** Stop every pooled child (idle ones politely, by closing stdin). */
+    public static void shutdownAll() {
+        POOLS.values().forEach(ProcessPool::close);
+    }
+
+    /** Rebuild pools when the config version moves; unchanged pools keep their children. */
+    private static void syncConfig() {
+        long v = CONFIG.version();
+        if (v == configVersion)
+            return;
+        synchronized (ProcessPool.class) {
+            if (v == configVersion)
+                return;
+            Map<String, String> values = CONFIG.values();
+            Set<String> seen = new HashSet<>();
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                String k = e.getKey();
+                if (!k.startsWith("pool.") || !k.endsWith(".template"))
+                    continue;
+                String name = k.substring("pool.".length(), k.length() - ".template".length());
+                String template = e.getValue().trim();
+                if (template.isEmpty())
+                    continue;
+                String command = values.getOrDefault("pool." + name + ".command", template).trim();
+                int size = intValue(values.get("pool." + name + ".size"), 2);
+                int maxRequests = intValue(values.get("pool." + name + ".max_requests"), 500);
+                ProcessPool cur = POOLS.get(name);
+                if (cur == null || !cur.template.equals(template) || !cur.command.equals(command)
+                        || cur.size != size || cur.maxRequests != maxRequests) {
+                    if (cur != null)
+                        cur.close();
+                    POOLS.put(name, new ProcessPool(name, template, command, size, maxRequests));
+                }
+                seen.add(name);
+            }
+            POOLS.entrySet().removeIf(e -> {
+                if (seen.contains(e.getKey()))
+                    return false;
+                e.getValue().close();
+                return true;
+            });
+            if (!POOLS.isEmpty() && !hookInstalled) {
+                Runtime.getRuntime().addShutdownHook(new Thread(ProcessPool::shutdownAll));
+                hookInstalled = true;
+            }
+            configVersion = v;
+        }
+    }
+
+    private static int intValue(String s, int def) {
+        if (s == null)
+            return def;
+        try {
+            return Math.max(1, Integer.parseInt(s.trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /** One long-lived child; used by a single job at a time. */
+    static final class Child {
+        final Process process;
+        final OutputStream stdin;
+        final BufferedReader stdout;
+        int requests;
+        long lastUsedMs = System.currentTimeMillis();
+
+        Child(String command) throws IOException {
+            ProcessBuilder pb = new ProcessBuilder("/bin/sh", "-c", command);
+            pb.redirectErrorStream(true);
+            process = pb.start();
+            stdin = process.getOutputStream();
+            stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String line) throws IOException {
+            stdin.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        }
+
+        /** Alive, and answers a ping if it has been idle long enough to be suspect. */
+        boolean healthy() {
+            if (!process.isAlive())
+                return false;
+            if (System.currentTimeMillis() - lastUsedMs < HEALTH_CHECK_IDLE_MS)
+                return true;
+            Thread pinger = Thread.ofVirtual().start(() -> {
+                try {
+                    send(PING);
+                    String line;
+                    while ((line = stdout.readLine()) != null) {
+                        if (line.startsWith(EXIT_MARKER)) {
+                            lastUsedMs = System.currentTimeMillis();
+                            return;
+                        }
+                    }
+                } catch (IOException ignored) {
+                }
+            });
+            try {
+                pinger.join(PING_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // a stuck pinger is left blocked on a stream that discard() is about to close
+            return !pinger.isAlive() && process.isAlive()
+                    && System.currentTimeMillis() - lastUsedMs < HEALTH_CHECK_IDLE_MS;
+        }
+
+        /** Close stdin so the child can exit on EOF; kill it if it is still around shortly after. */
+        void retire() {
+            try {
+                stdin.close();
+            } catch (IOException ignored) {
+            }
+            process.onExit().orTimeout(5, TimeUnit.SECONDS)
+                    .exceptionally(t -> {
+                        process.destroyForcibly();
+                        return null;
+                    });
+        }
+    }
+
+    /** A job running on a pooled child; a reader virtual thread waits for the exit marker. */
+    static final class PooledExecution implements JobExecution {
+        private final ProcessPool pool;
+        private final Child child;
+        private final String args;
+        private final StringBuilder out = new StringBuilder();
+        private final Thread reader;
+        // whoever flips this first (reader finishing or a timeout kill) owns the child
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile Integer exitCode;
+
+        PooledExecution(ProcessPool pool, Child child, String args) {
+            this.pool = pool;
+            this.child = child;
+            this.args = args;
+            child.requests++;
+            reader = Thread.ofVirtual().name("pool-" + pool.name).start(this::exchange);
+        }
+
+        private void exchange() {
+            boolean ok = false;
+            try {
+                child.send(args);
+                String line;
+                while ((line = child.stdout.readLine()) != null) {
+                    if (line.startsWith(EXIT_MARKER)) {
+                        exitCode = parseExit(line);
+                        ok = true;
+                        break;
+                    }
+                    synchronized (out) {
+                        out.append(line).append('\n');
+                    }
+                }
+                if (!ok) {
+                    synchronized (out) {
+                        out.append("[pooled process for '").append(pool.name).append("' exited]\n");
+                    }
+                    exitCode = 1;
+                }
+            } catch (IOException e) {
+                synchronized (out) {
+                    out.append("[pooled process for '").append(pool.name).append("' failed: ")
+                            .append(e.getMessage()).append("]\n");
+                }
+                exitCode = 1;
+            } finally {
+                if (settled.compareAndSet(false, true))
+                    pool.release(child, ok);
+            }
+        }
+
+        private static int parseExit(String line) {
+            try {
+                return Integer.parseInt(line.substring(EXIT_MARKER.length()).trim());
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+
+        @Override
+        public Integer waitFor(long timeoutMs) throws InterruptedException {
+            reader.join(Math.max(1, timeoutMs));
+            return reader.isAlive() ? null : exitCode;
+        }
+
+        @Override
+        public void kill() {
+            // the child may be mid-request; it can't be reused
+            if (settled.compareAndSet(false, true))
+                pool.discard(child);
+        }
+
+        @Override
+        public String output() {
+            try {
+                reader.join(1000);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (out) {
+                return out.toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs N worker JVMs ("shards") from one local supervisor so a GC pause or a
+ * crash only takes out one failure domain. Each shard is a plain
+ * {@code worker start <args>} child. Crashed shards are restarted with
+ * exponential backoff (1s doubling to 60s, reset after a minute of healthy
+ * uptime). Child pids are kept in {@code shards.pid}, and a telemetry line
+ * aggregating the shards is printed every {@link #TELEMETRY_EVERY_MS}.
+ */
+public class ProcessSupervisor implements Runnable {
+    private static final long MAX_BACKOFF_MS = 60_000;
+    private static final long HEALTHY_AFTER_MS = 60_000;
+    private static final long TELEMETRY_EVERY_MS = 30_000;
+
+    private final int processes;
+    private final List<String> workerArgs;
+    private final List<Shard> shards = new ArrayList<>();
+    private int metricsPort;
+    private Path jfrFile;
+    private volatile boolean stop;
+
+    public ProcessSupervisor(int processes, List<String> workerArgs) {
+        this.processes = Math.max(1, processes);
+        this.workerArgs = workerArgs;
+    }
+
+    /** Give shard N a metrics exporter on {@code port + N} (0 = none). */
+    public void setMetricsPort(int port) {
+        this.metricsPort = port;
+    }
+
+    /** Give shard N a flight recording next to {@code file}, named {@code <name>-N.jfr} (null = none). */
+    public void setJfrFile(Path file) {
+        this.jfrFile = file;
+    }
+
+    public static Path pidFile() {
+        return Paths.get(Database.baseDir(), "shards.pid");
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < processes; i++)
+            shards.add(new Shard(i));
+        long lastTelemetry = System.currentTimeMillis();
+        while (!stop) {
+            long now = System.currentTimeMillis();
+            boolean changed = false;
+            for (Shard s : shards) {
+                if (s.process != null && s.process.isAlive())
+                    continue;
+                if (s.process != null) {
+                    // just exited: schedule a restart unless we are draining
+                    if (Database.isStopRequested()) {
+                        continue;
+                    }
+                    long uptime = now - s.startedAtMs;
+                    s.failures = uptime >= HEALTHY_AFTER_MS ? 1 : s.failures + 1;
+                    long backoff = Math.min(MAX_BACKOFF_MS, 1000L << Math.min(16, s.failures - 1));
+                    System.out.printf("[supervisor] shard-%d (pid=%d) exited code=%d after %ds; restart in %ds%n",
+                            s.index, s.process.pid(), s.process.exitValue(), uptime / 1000, backoff / 1000);
+                    s.process = null;
+                    s.restartAtMs = now + backoff;
+                    changed = true;
+                }
+                if (now >= s.restartAtMs && !Database.isStopRequested()) {
+                    s.start();
+                    changed = true;
+                }
+            }
+            if (changed)
+                writePidFile();
+            if (Database.isStopRequested() && shards.stream().noneMatch(s -> s.process != null && s.process.isAlive()))
+                break;
+            if (now - lastTelemetry >= TELEMETRY_EVERY_MS) {
+                printTelemetry();
+                lastTelemetry = now;
+            }
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            Files.deleteIfExists(pidFile());
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** TERM every shard (each drains its workers), then kill stragglers. */
+    public void shutdown(Duration grace) {
+        stop = true;
+        for (Shard s : shards)
+            if (s.process != null)
+                s.process.destroy();
+        long deadline = System.currentTimeMillis() + grace.toMillis();
+        for (Shard s : shards) {
+            if (s.process == null)
+                continue;
+            try {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0 || !s.process.waitFor(left, java.util.concurrent.TimeUnit.MILLISECONDS))
+                    s.process.destroyForcibly();
+            } catch (InterruptedException e) {
+                s.process.destroyForcibly();
+            }
+        }
+    }
+
+    private void printTelemetry() {
+        int alive = 0;
+        int restarts = 0;
+        long cpuMs = 0;
+        for (Shard s : shards) {
+            restarts += s.restarts;
+            if (s.process != null && s.process.isAlive()) {
+                alive++;
+                cpuMs += s.process.toHandle().info().totalCpuDuration().map(Duration::toMillis).orElse(0L);
+            }
+        }
+        WorkerRegistry.Counts counts = new WorkerRegistry().counts();
+        System.out.printf("[supervisor] shards alive=%d/%d restarts=%d workers idle=%d busy=%d shard cpu=%.1fs%n",
+                alive, shards.size(), restarts, counts.idle(), counts.busy(), cpuMs / 1000.0);
+    }
+
+    private void writePidFile() {
+        StringBuilder sb = new StringBuilder();
+        for (Shard s : shards)
+            if (s.process != null)
+                sb.append(s.process.pid()).append('\n');
+        try {
+            Files.writeString(pidFile(), sb.toString());
+        } catch (Exception e) {
+            System.err.println("Failed to write shard pid file: " + e.getMessage());
+        }
+    }
+
+    private class Shard {
+        final int index;
+        Process process;
+        long startedAtMs;
+        long restartAtMs;
+        int failures;
+        int restarts = -1;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        void start() {
+            try {
+                String jar = new File(
+                        org.example.Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+                List<String> cmd = new ArrayList<>(List.of(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-Duser.home=" + System.getProperty("user.home"),
+                        "-jar", jar, "worker", "start"));
+                cmd.addAll(workerArgs);
+                if (metricsPort > 0)
+                    cmd.addAll(List.of("--metrics-port", Integer.toString(metricsPort + index)));
+                if (jfrFile != null) {
+                    String name = jfrFile.getFileName().toString().replaceFirst("\\.jfr$", "");
+                    cmd.addAll(List.of("--jfr", jfrFile.resolveSibling(name + "-" + index + ".jfr").toString()));
+                }
+                File out = Paths.get(Database.baseDir(), "logs", "shard-" + index + ".out").toFile();
+                process = new ProcessBuilder(cmd)
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(out))
+                        .start();
+                startedAtMs = System.currentTimeMillis();
+                restarts++;
+                System.out.println("[supervisor] started shard-" + index + " pid=" + process.pid());
+            } catch (Exception e) {
+                failures++;
+                restartAtMs = System.currentTimeMillis() + Math.min(MAX_BACKOFF_MS, 1000L << Math.min(16, failures));
+                System.err.println("[supervisor] failed to start shard-" + index + ": " + e.getMessage());
+            }
+        }
+    }
+}
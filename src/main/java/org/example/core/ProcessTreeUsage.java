@@ -0,0 +1,126 @@
+package org.example.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CPU time, peak RSS and I/O of a job's process and its descendants, sampled
+ * from {@code /proc} (Linux only; elsewhere {@link #supported()} is false).
+ * <p>
+ * {@code /proc/<pid>/stat} and {@code /proc/<pid>/io} count a process's own
+ * usage plus that of the children it has reaped, so one sample sums the live
+ * processes of the tree and nothing is counted twice. Work done after the last
+ * sample, between it and the root's exit, is not seen: callers sample on every
+ * poll tick (200ms in {@link Worker}) so only the tail of the run is lost, and a
+ * job shorter than one tick may read as zero. Peak RSS is the larger of the
+ * biggest sampled tree total and any single process's {@code VmHWM}.
+ */
+final class ProcessTreeUsage {
+    /** USER_HZ; 100 on every mainstream Linux build, and not readable without JNI. */
+    private static final long TICKS_PER_SECOND = 100;
+    private static final boolean SUPPORTED = Files.isReadable(Paths.get("/proc/self/stat"))
+            && Files.isReadable(Paths.get("/proc/self/io"));
+
+    /** Totals for one run; {@code processes} is the most processes seen in one sample. */
+    record Usage(long cpuMs, long peakRssKb, long readBytes, long writeBytes, int processes) {
+    }
+
+    private final ProcessHandle root;
+    private long cpuTicks;
+    private long peakRssKb;
+    private long readBytes;
+    private long writeBytes;
+    private int processes;
+
+    ProcessTreeUsage(ProcessHandle root) {
+        this.root = root;
+    }
+
+    static boolean supported() {
+        return SUPPORTED;
+    }
+
+    /** Take one sample; cheap enough (a few small file reads per process) for every poll tick. */
+    void sample() {
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(root);
+        root.descendants().forEach(tree::add);
+        long ticks = 0;
+        long rss = 0;
+        long read = 0;
+        long write = 0;
+        int seen = 0;
+        for (ProcessHandle p : tree) {
+            Path dir = Paths.get("/proc", Long.toString(p.pid()));
+            try {
+                long cpu = cpuTicks(dir);
+                long[] status = status(dir);
+                long[] io = io(dir);
+                ticks += cpu;
+                rss += status[0];
+                peakRssKb = Math.max(peakRssKb, status[1]);
+                read += io[0];
+                write += io[1];
+                seen++;
+            } catch (IOException | RuntimeException e) {
+                // exited between listing and reading; its parent's counters pick it up once reaped
+            }
+        }
+        // counters only move backwards when a process exits before its parent reaps it
+        cpuTicks = Math.max(cpuTicks, ticks);
+        peakRssKb = Math.max(peakRssKb, rss);
+        readBytes = Math.max(readBytes, read);
+        writeBytes = Math.max(writeBytes, write);
+        processes = Math.max(processes, seen);
+    }
+
+    Usage result() {
+        return new Usage(cpuTicks * 1000 / TICKS_PER_SECOND, peakRssKb, readBytes, writeBytes, processes);
+    }
+
+    /** utime + stime + cutime + cstime, in ticks. */
+    private static long cpuTicks(Path dir) throws IOException {
+        String s = Files.readString(dir.resolve("stat"));
+        // comm (field 2) may contain spaces and parentheses; fields restart after the last ')'
+        String[] f = s.substring(s.lastIndexOf(')') + 2).trim().split(" ");
+        // f[0] is field 3 (state), so utime (14) .. cstime (17) are f[11] .. f[14]
+        return Long.parseLong(f[11]) + Long.parseLong(f[12]) + Long.parseLong(f[13]) + Long.parseLong(f[14]);
+    }
+
+    /** VmRSS and VmHWM, in kB (0 for zombies, which have no mm). */
+    private static long[] status(Path dir) throws IOException {
+        long rss = 0;
+        long hwm = 0;
+        for (String line : Files.readAllLines(dir.resolve("status"))) {
+            if (line.startsWith("VmRSS:"))
+                rss = kb(line);
+            else if (line.startsWith("VmHWM:"))
+                hwm = kb(line);
+        }
+        return new long[] { rss, hwm };
+    }
+
+    /**
+     * rchar and wchar: bytes through read/write syscalls, pipes and page cache
+     * included. read_bytes/write_bytes (storage only) stay 0 in many containers.
+     */
+    private static long[] io(Path dir) throws IOException {
+        long read = 0;
+        long write = 0;
+        for (String line : Files.readAllLines(dir.resolve("io"))) {
+            if (line.startsWith("rchar:"))
+                read = Long.parseLong(line.substring(6).trim());
+            else if (line.startsWith("wchar:"))
+                write = Long.parseLong(line.substring(6).trim());
+        }
+        return new long[] { read, write };
+    }
+
+    private static long kb(String line) {
+        return Long.parseLong(line.replaceAll("[^0-9]", ""));
+    }
+}
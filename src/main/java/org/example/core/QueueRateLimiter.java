@@ -0,0 +1,179 @@
+package org.example.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-queue token buckets shared by every worker thread in this JVM.
+ * Configured via {@code queue.<name>.rate} (jobs/sec) and optional
+ * {@code queue.<name>.burst} (default: one second of tokens, at least 1).
+ * Each bucket is a single AtomicLong holding the theoretical arrival time
+ * (GCRA), so acquiring a token is one CAS with no locks.
+ */
+public class QueueRateLimiter {
+    private static final ConfigRepository CONFIG = new ConfigRepository();
+    private static final Map<String, Bucket> BUCKETS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> THROTTLED = new ConcurrentHashMap<>();
+    private static final ThreadLocal<long[]> RETRY_HINT_NANOS = ThreadLocal.withInitial(() -> new long[] { -1 });
+    private static volatile long configVersion = -1;
+
+    /** Take a token for the queue; false (and a throttle count) if the queue is over its rate. */
+    public static boolean tryAcquire(String queue) {
+        Bucket b = bucket(queue);
+        if (b == null)
+            return true;
+        long wait = b.tryAcquire();
+        if (wait == 0)
+            return true;
+        recordThrottled(queue, wait);
+        return false;
+    }
+
+    /** Give back a token taken for a claim that found no job. */
+    public static void refund(String queue) {
+        Bucket b = bucket(queue);
+        if (b != null)
+            b.refund();
+    }
+
+    /**
+     * Rate-limited queues that have no token right now, with the nanos until they
+     * refill, for claims that must exclude them up front. Counts nothing: an
+     * excluded queue is only a throttled claim if it had a job ready and the claim
+     * came back empty, which the caller reports through {@link #deferred}.
+     */
+    public static Map<String, Long> throttledQueues() {
+        syncConfig();
+        Map<String, Long> out = new HashMap<>();
+        for (Map.Entry<String, Bucket> e : BUCKETS.entrySet()) {
+            long wait = e.getValue().waitNanos();
+            if (wait > 0)
+                out.put(e.getKey(), wait);
+        }
+        return out;
+    }
+
+    /** Count a claim that found nothing because {@code queue}, which had a job ready, was excluded. */
+    public static void deferred(String queue, long waitNanos) {
+        recordThrottled(queue, waitNanos);
+    }
+
+    private static void recordThrottled(String queue, long waitNanos) {
+        THROTTLED.computeIfAbsent(queue, k -> new LongAdder()).increment();
+        long[] hint = RETRY_HINT_NANOS.get();
+        hint[0] = hint[0] < 0 ? waitNanos : Math.min(hint[0], waitNanos);
+    }
+
+    /**
+     * How long the calling worker should sleep before polling again: the time until
+     * the bucket that last throttled it refills, capped at {@code defaultMs}.
+     * Clears the hint.
+     */
+    public static long pollDelayMs(long defaultMs) {
+        long[] hint = RETRY_HINT_NANOS.get();
+        long nanos = hint[0];
+        hint[0] = -1;
+        if (nanos < 0)
+            return defaultMs;
+        return Math.max(1, Math.min(defaultMs, TimeUnit.NANOSECONDS.toMillis(nanos) + 1));
+    }
+
+    /** Throttled claim attempts per queue since JVM start. */
+    public static Map<String, Long> throttledCounts() {
+        Map<String, Long> m = new HashMap<>();
+        THROTTLED.forEach((q, n) -> m.put(q, n.sum()));
+        return m;
+    }
+
+    private static Bucket bucket(String queue) {
+        syncConfig();
+        return BUCKETS.get(queue);
+    }
+
+    /** Rebuild buckets when the config version moves; unchanged buckets keep their state. */
+    private static void syncConfig() {
+        long v = CONFIG.version();
+        if (v == configVersion)
+            return;
+        synchronized (QueueRateLimiter.class) {
+            if (v == configVersion)
+                return;
+            Map<String, String> values = CONFIG.values();
+            Set<String> seen = new HashSet<>();
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                String k = e.getKey();
+                if (!k.startsWith("queue.") || !k.endsWith(".rate"))
+                    continue;
+                String queue = k.substring("queue.".length(), k.length() - ".rate".length());
+                double rate;
+                try {
+                    rate = Double.parseDouble(e.getValue().trim());
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+                if (rate <= 0)
+                    continue;
+                int burst = Math.max(1, (int) Math.ceil(rate));
+                try {
+                    String b = values.get("queue." + queue + ".burst");
+                    if (b != null)
+                        burst = Math.max(1, Integer.parseInt(b.trim()));
+                } catch (NumberFormatException ignored) {
+                }
+                Bucket cur = BUCKETS.get(queue);
+                if (cur == null || cur.rate != rate || cur.burst != burst)
+                    BUCKETS.put(queue, new Bucket(rate, burst));
+                seen.add(queue);
+            }
+            BUCKETS.keySet().retainAll(seen);
+            configVersion = v;
+        }
+    }
+
+    static final class Bucket {
+        final double rate;
+        final int burst;
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong tat;
+
+        Bucket(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            this.toleranceNanos = intervalNanos * burst;
+            this.tat = new AtomicLong(System.nanoTime());
+        }
+
+        /** @return 0 if a token was taken, otherwise nanos until one is available */
+        long tryAcquire() {
+            while (true) {
+                long now = System.nanoTime();
+                long cur = tat.get();
+                long next = Math.max(cur, now) + intervalNanos;
+                long ahead = next - now;
+                if (ahead > toleranceNanos)
+                    return ahead - toleranceNanos;
+                if (tat.compareAndSet(cur, next))
+                    return 0;
+            }
+        }
+
+        /** @return 0 if a token is available, otherwise nanos until one is */
+        long waitNanos() {
+            long now = System.nanoTime();
+            return Math.max(0, Math.max(tat.get(), now) + intervalNanos - now - toleranceNanos);
+        }
+
+        void refund() {
+            // dropping below now is harmless: acquire clamps to max(tat, now)
+            tat.addAndGet(-intervalNanos);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Arrival and service rates per queue and priority, as exponentially decayed
+ * counters in {@code queue_rates}, updated inside the transactions that enqueue,
+ * retry, complete or fail jobs, so every process sharing the DB contributes and
+ * there is no extra commit. A row holds event counts decayed with time constant
+ * {@code rate_window_seconds} (default 300) as of {@code updated_ms}; dividing
+ * the value decayed to "now" by the time constant gives a rate, corrected for
+ * counters younger than the window (arrivals from {@code since_ms}, services
+ * from {@code served_since_ms}). Decay runs in SQL ({@code exp()}, part of the
+ * bundled SQLite build) so concurrent writers cannot lose updates.
+ * <p>
+ * {@link #forecast} combines the rates with the PENDING backlog and the live
+ * worker count into drain-time estimates and capacity flags.
+ */
+public final class QueueRates {
+    public static final int DEFAULT_WINDOW_SECONDS = 300;
+
+    /** One queue/priority. {@code drainSeconds} is null when the backlog is not shrinking. */
+    public record Row(String queue, int priority, long pending, double arrivalPerSec, double servicePerSec,
+            double meanServiceSeconds, Double drainSeconds, boolean growing) {
+    }
+
+    /**
+     * Capacity of one queue: what its workers (capped by {@code max_concurrency}
+     * and {@code rate}) can finish per second at its mean service time.
+     */
+    public record QueueCapacity(String queue, double arrivalPerSec, double capacityPerSec, String limit,
+            boolean overCapacity) {
+    }
+
+    /** Everything {@code status --detail} and {@code /api/status} show. */
+    public record Forecast(int windowSeconds, int workers, double arrivalPerSec, double servicePerSec,
+            double capacityPerSec, double utilization, int workersNeeded, boolean overCapacity, List<Row> rows,
+            List<QueueCapacity> queues) {
+    }
+
+    private static final String UPSERT_TAIL = " ON CONFLICT(queue, priority) DO UPDATE SET "
+            + "arrivals = arrivals * exp(MIN(0, updated_ms - excluded.updated_ms) / ?) + excluded.arrivals, "
+            + "services = services * exp(MIN(0, updated_ms - excluded.updated_ms) / ?) + excluded.services, "
+            + "busy_seconds = busy_seconds * exp(MIN(0, updated_ms - excluded.updated_ms) / ?) + excluded.busy_seconds, "
+            + "served_since_ms = COALESCE(served_since_ms, excluded.served_since_ms), "
+            + "updated_ms = MAX(updated_ms, excluded.updated_ms)";
+
+    private static final ConfigRepository CONFIG = new ConfigRepository();
+
+    private QueueRates() {
+    }
+
+    /** Count {@code n} jobs becoming PENDING (enqueued or re-queued for retry). */
+    static void arrived(Connection c, String queue, int priority, int n) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO queue_rates(queue, priority, arrivals, services, busy_seconds, since_ms, served_since_ms, updated_ms) "
+                        + "VALUES(?,?,?,0,0,?,NULL,?)" + UPSERT_TAIL)) {
+            ps.setString(1, queue);
+            ps.setInt(2, priority);
+            ps.setDouble(3, n);
+            ps.setLong(4, now);
+            ps.setLong(5, now);
+            bindWindow(ps, 6);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Count one finished attempt of a PROCESSING job, with its service time from
+     * {@code locked_at}. Call before the job leaves PROCESSING; counts nothing unless
+     * the job is still locked by {@code workerId}. Both ends are whole seconds, so
+     * single values are coarse but their mean is not biased.
+     */
+    static void served(Connection c, String jobId, String workerId, long nowEpochSeconds) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO queue_rates(queue, priority, arrivals, services, busy_seconds, since_ms, served_since_ms, updated_ms) "
+                        + "SELECT queue, priority, 0, 1, MAX(0, ? - COALESCE(locked_at, ?)), ?, ?, ? FROM jobs "
+                        + "WHERE id = ? AND state = 'PROCESSING' AND locked_by = ?" + UPSERT_TAIL)) {
+            ps.setLong(1, nowEpochSeconds);
+            ps.setLong(2, nowEpochSeconds);
+            ps.setLong(3, now);
+            ps.setLong(4, now);
+            ps.setLong(5, now);
+            ps.setString(6, jobId);
+            ps.setString(7, workerId);
+            bindWindow(ps, 8);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void bindWindow(PreparedStatement ps, int from) throws SQLException {
+        double tauMs = windowSeconds() * 1000.0;
+        for (int i = 0; i < 3; i++)
+            ps.setDouble(from + i, tauMs);
+    }
+
+    private static int windowSeconds() {
+        return Math.max(10, CONFIG.getInt("rate_window_seconds", DEFAULT_WINDOW_SECONDS));
+    }
+
+    /** Rates, backlog and capacity now, for every queue/priority with a backlog or recent traffic. */
+    public static Forecast forecast(int workers) {
+        int window = windowSeconds();
+        double tau = window;
+        long now = System.currentTimeMillis();
+        Map<String, Map<Integer, double[]>> acc = new TreeMap<>();
+        // [pending, arrivals/s, services/s, decayed services, decayed busy seconds]
+        try (Connection c = Database.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT queue, priority, arrivals, services, busy_seconds, since_ms, served_since_ms, updated_ms FROM queue_rates");
+                    ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    double age = Math.max(0, now - rs.getLong("updated_ms")) / 1000.0;
+                    double decay = Math.exp(-age / tau);
+                    long servedSince = rs.getLong("served_since_ms");
+                    if (rs.wasNull())
+                        servedSince = now;
+                    double[] v = row(acc, rs.getString("queue"), rs.getInt("priority"));
+                    v[1] = rs.getDouble("arrivals") * decay / span(now - rs.getLong("since_ms"), tau);
+                    v[2] = rs.getDouble("services") * decay / span(now - servedSince, tau);
+                    v[3] = rs.getDouble("services") * decay;
+                    v[4] = rs.getDouble("busy_seconds") * decay;
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT queue, priority, COUNT(1) AS n FROM jobs WHERE state = 'PENDING' GROUP BY queue, priority");
+                    ResultSet rs = ps.executeQuery()) {
+                while (rs.next())
+                    row(acc, rs.getString("queue"), rs.getInt("priority"))[0] = rs.getLong("n");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        List<Row> rows = new ArrayList<>();
+        List<QueueCapacity> queues = new ArrayList<>();
+        double inTotal = 0;
+        double outTotal = 0;
+        double servedTotal = 0;
+        double busyTotal = 0;
+        for (Map.Entry<String, Map<Integer, double[]>> q : acc.entrySet()) {
+            double qIn = 0;
+            double qServed = 0;
+            double qBusy = 0;
+            for (Map.Entry<Integer, double[]> p : q.getValue().entrySet()) {
+                double[] v = p.getValue();
+                // rows that decayed to nothing and have no backlog are history, not news
+                if (v[0] == 0 && v[1] < 1e-4 && v[2] < 1e-4)
+                    continue;
+                double net = v[2] - v[1];
+                Double drain = v[0] == 0 ? Double.valueOf(0) : net > 1e-9 ? Double.valueOf(v[0] / net) : null;
+                rows.add(new Row(q.getKey(), p.getKey(), (long) v[0], v[1], v[2], v[3] > 0 ? v[4] / v[3] : 0, drain,
+                        v[0] > 0 && net <= 1e-9));
+                qIn += v[1];
+                qServed += v[3];
+                qBusy += v[4];
+                outTotal += v[2];
+            }
+            inTotal += qIn;
+            servedTotal += qServed;
+            busyTotal += qBusy;
+            if (qServed > 0 && qBusy > 0) {
+                double service = qBusy / qServed;
+                int maxConcurrency = CONFIG.getInt("queue." + q.getKey() + ".max_concurrency", 0);
+                int slots = maxConcurrency > 0 ? Math.min(workers, maxConcurrency) : workers;
+                double capacity = slots / service;
+                String limit = maxConcurrency > 0 && maxConcurrency < workers ? "max_concurrency " + maxConcurrency : "workers";
+                double rate = rateLimit(q.getKey());
+                if (rate > 0 && rate < capacity) {
+                    capacity = rate;
+                    limit = "rate " + rate + "/s";
+                }
+                queues.add(new QueueCapacity(q.getKey(), qIn, capacity, limit, qIn > capacity));
+            }
+        }
+        double service = servedTotal > 0 ? busyTotal / servedTotal : 0;
+        double capacity = service > 0 ? workers / service : 0;
+        double load = inTotal * service;
+        double utilization = workers > 0 ? load / workers : 0;
+        boolean over = inTotal > 0 && (workers == 0 || (service > 0 && load > workers))
+                || queues.stream().anyMatch(QueueCapacity::overCapacity);
+        return new Forecast(window, workers, inTotal, outTotal, capacity, utilization, (int) Math.ceil(load), over,
+                rows, queues);
+    }
+
+    /**
+     * The effective averaging time of a counter that started {@code livedMs} ago:
+     * a counter younger than the window has not filled up to its steady value yet.
+     */
+    private static double span(long livedMs, double tau) {
+        double lived = Math.max(1000, livedMs) / 1000.0;
+        return tau * (1 - Math.exp(-lived / tau));
+    }
+
+    private static double rateLimit(String queue) {
+        try {
+            return Double.parseDouble(CONFIG.get("queue." + queue + ".rate", "0").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double[] row(Map<String, Map<Integer, double[]>> acc, String queue, int priority) {
+        return acc.computeIfAbsent(queue, k -> new TreeMap<>(java.util.Comparator.reverseOrder()))
+                .computeIfAbsent(priority, k -> new double[5]);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.core;
+
+/**
+ * A recurring job definition. {@code spec} is either a cron expression (see
+ * {@link CronExpression}) or {@code @every <n>[s|m|h|d]}. Nullable job fields fall
+ * back to the config defaults when the job is materialized.
+ */
+public record Schedule(String name, String spec, String command, String queue, String tenant, Integer priority,
+        Integer maxRetries, Integer timeoutSeconds, String misfire, boolean allowOverlap, boolean enabled,
+        long nextFireAt, Long lastFiredAt, String lastJobId) {
+
+    /** Missed fire times collapse into one run as soon as possible (default). */
+    public static final String MISFIRE_FIRE_ONCE = "fire_once";
+    /** Missed fire times are dropped; the next run is the next future fire time. */
+    public static final String MISFIRE_SKIP = "skip";
+
+    /** Next fire time strictly after {@code afterEpoch}, or -1 if the spec never fires again. */
+    public long nextAfter(long afterEpoch) {
+        return nextAfter(spec, afterEpoch);
+    }
+
+    /** @throws IllegalArgumentException if the spec is malformed */
+    public static long nextAfter(String spec, long afterEpoch) {
+        String s = spec.trim();
+        if (s.startsWith("@every")) {
+            long interval = parseInterval(s.substring("@every".length()).trim());
+            return afterEpoch + interval;
+        }
+        return CronExpression.parse(s).nextAfter(afterEpoch);
+    }
+
+    /** {@code 30s}, {@code 5m}, {@code 2h}, {@code 1d}; a bare number is seconds. */
+    static long parseInterval(String s) {
+        if (s.isEmpty())
+            throw new IllegalArgumentException("@every needs an interval, e.g. @every 5m");
+        char unit = s.charAt(s.length() - 1);
+        long mult = switch (unit) {
+            case 's' -> 1;
+            case 'm' -> 60;
+            case 'h' -> 3600;
+            case 'd' -> 86400;
+            default -> 0;
+        };
+        long n;
+        try {
+            n = Long.parseLong(mult == 0 ? s : s.substring(0, s.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad interval: " + s);
+        }
+        long seconds = n * (mult == 0 ? 1 : mult);
+        if (seconds <= 0)
+            throw new IllegalArgumentException("interval must be positive: " + s);
+        return seconds;
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.core;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScheduleRepository {
+    private static final String COLUMNS = "name,spec,command,queue,tenant,priority,max_retries,timeout_seconds,misfire,allow_overlap,enabled,next_fire_at,last_fired_at,last_job_id";
+
+    /** Outcome of one {@link #fire} call. */
+    public enum FireResult {
+        FIRED, SKIPPED_OVERLAP, SKIPPED_MISFIRE, LOST
+    }
+
+    /** Insert or replace a schedule; the next fire time is recomputed from now. */
+    public void upsert(Schedule s) {
+        String sql = "INSERT OR REPLACE INTO schedules (" + COLUMNS + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, s.name());
+            ps.setString(2, s.spec());
+            ps.setString(3, s.command());
+            ps.setString(4, s.queue());
+            ps.setString(5, s.tenant());
+            setNullableInt(ps, 6, s.priority());
+            setNullableInt(ps, 7, s.maxRetries());
+            setNullableInt(ps, 8, s.timeoutSeconds());
+            ps.setString(9, s.misfire());
+            ps.setInt(10, s.allowOverlap() ? 1 : 0);
+            ps.setInt(11, s.enabled() ? 1 : 0);
+            ps.setLong(12, s.nextFireAt());
+            if (s.lastFiredAt() == null)
+                ps.setNull(13, Types.INTEGER);
+            else
+                ps.setLong(13, s.lastFiredAt());
+            ps.setString(14, s.lastJobId());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save schedule", e);
+        }
+    }
+
+    public boolean remove(String name) {
+        try (Connection c = Database.getConnection();
+                PreparedStatement ps = c.prepareStatement("DELETE FROM schedules WHERE name=?")) {
+            ps.setString(1, name);
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean setEnabled(String name, boolean enabled) {
+        try (Connection c = Database.getConnection();
+                PreparedStatement ps = c.prepareStatement("UPDATE schedules SET enabled=? WHERE name=?")) {
+            ps.setInt(1, enabled ? 1 : 0);
+            ps.setString(2, name);
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<Schedule> list(boolean enabledOnly) {
+        String sql = "SELECT " + COLUMNS + " FROM schedules" + (enabledOnly ? " WHERE enabled=1" : "") + " ORDER BY name";
+        List<Schedule> out = new ArrayList<>();
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next())
+                out.add(rowToSchedule(rs));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /**
+     * Advance a schedule from {@code fireAt} to {@code nextFireAt} and, unless the
+     * previous run is still active (and overlap is off) or {@code enqueue} is false,
+     * insert {@code job}. The advance is a compare-and-set on next_fire_at inside
+     * BEGIN IMMEDIATE, so when several worker JVMs run a scheduler exactly one of
+     * them materializes each fire time.
+     */
+    public FireResult fire(Schedule s, long fireAt, long nextFireAt, boolean enqueue, Job job,
+            JobRepository jobs) {
+        try (Connection c = Database.getConnection(); Statement st = c.createStatement()) {
+            st.execute("BEGIN IMMEDIATE");
+            try {
+                FireResult result = enqueue ? FireResult.FIRED : FireResult.SKIPPED_MISFIRE;
+                if (enqueue && !s.allowOverlap() && lastRunActive(c, s.name())) {
+                    result = FireResult.SKIPPED_OVERLAP;
+                }
+                String sql = "UPDATE schedules SET next_fire_at=?, last_fired_at=?, last_job_id=COALESCE(?, last_job_id) "
+                        + "WHERE name=? AND next_fire_at=? AND enabled=1";
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setLong(1, nextFireAt);
+                    ps.setLong(2, fireAt);
+                    ps.setString(3, result == FireResult.FIRED ? job.getId() : null);
+                    ps.setString(4, s.name());
+                    ps.setLong(5, fireAt);
+                    if (ps.executeUpdate() == 0) {
+                        st.execute("ROLLBACK");
+                        return FireResult.LOST;
+                    }
+                }
+                if (result == FireResult.FIRED)
+                    jobs.insertJob(c, job, 0);
+                st.execute("COMMIT");
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                // an insert failure (e.g. a taken job id) must not leave the write lock held
+                st.execute("ROLLBACK");
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to fire schedule " + s.name(), e);
+        }
+    }
+
+    private static boolean lastRunActive(Connection c, String name) throws SQLException {
+        String sql = "SELECT 1 FROM schedules s JOIN jobs j ON j.id = s.last_job_id "
+                + "WHERE s.name=? AND j.state IN ('PENDING','BLOCKED','PROCESSING')";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void setNullableInt(PreparedStatement ps, int i, Integer v) throws SQLException {
+        if (v == null)
+            ps.setNull(i, Types.INTEGER);
+        else
+            ps.setInt(i, v);
+    }
+
+    private static Integer nullableInt(ResultSet rs, String col) throws SQLException {
+        int v = rs.getInt(col);
+        return rs.wasNull() ? null : v;
+    }
+
+    private Schedule rowToSchedule(ResultSet rs) throws SQLException {
+        long last = rs.getLong("last_fired_at");
+        Long lastFiredAt = rs.wasNull() ? null : last;
+        return new Schedule(rs.getString("name"), rs.getString("spec"), rs.getString("command"),
+                rs.getString("queue"), rs.getString("tenant"), nullableInt(rs, "priority"),
+                nullableInt(rs, "max_retries"), nullableInt(rs, "timeout_seconds"), rs.getString("misfire"),
+                rs.getInt("allow_overlap") == 1, rs.getInt("enabled") == 1, rs.getLong("next_fire_at"),
+                lastFiredAt, rs.getString("last_job_id"));
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.core;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Materializes {@link Schedule}s into jobs. One thread per worker JVM keeps the
+ * enabled schedules in a priority queue ordered by next fire time and sleeps
+ * until the head is due, so idle schedules cost nothing. The table is re-read
+ * every {@link #RELOAD_MS} to pick up CLI changes and fires made by schedulers
+ * in other processes; {@link ScheduleRepository#fire} makes sure each fire time
+ * is materialized once.
+ * <p>
+ * A fire time more than {@link #MISFIRE_GRACE_SECONDS} in the past (workers were
+ * down, or the schedule was paused) is a misfire: {@code fire_once} runs it once
+ * now, {@code skip} drops it. Either way the schedule then resumes at its next
+ * future fire time rather than replaying every missed slot.
+ */
+public class Scheduler implements Runnable {
+    static final long RELOAD_MS = 10_000;
+    static final long MISFIRE_GRACE_SECONDS = 60;
+
+    private final ScheduleRepository schedules = new ScheduleRepository();
+    private final JobRepository jobs;
+    private final ConfigRepository config = new ConfigRepository();
+    private final PriorityQueue<Schedule> due = new PriorityQueue<>(Comparator.comparingLong(Schedule::nextFireAt));
+    private volatile boolean stop;
+
+    public Scheduler(JobRepository jobs) {
+        this.jobs = jobs;
+    }
+
+    public void requestStop() {
+        stop = true;
+    }
+
+    @Override
+    public void run() {
+        long reloadAtMs = 0;
+        while (!stop) {
+            try {
+                long nowMs = System.currentTimeMillis();
+                if (nowMs >= reloadAtMs) {
+                    due.clear();
+                    for (Schedule s : schedules.list(true))
+                        if (s.nextFireAt() >= 0)
+                            due.add(s);
+                    reloadAtMs = nowMs + RELOAD_MS;
+                }
+                Schedule head = due.peek();
+                long sleepMs = reloadAtMs - nowMs;
+                if (head != null)
+                    sleepMs = Math.min(sleepMs, head.nextFireAt() * 1000 - nowMs);
+                if (sleepMs > 0) {
+                    Thread.sleep(sleepMs);
+                    continue;
+                }
+                due.poll();
+                if (!fire(head))
+                    reloadAtMs = 0; // someone else moved it; resync
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("Scheduler error: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** @return false if another scheduler already handled this fire time */
+    private boolean fire(Schedule s) {
+        long now = Instant.now().getEpochSecond();
+        long fireAt = s.nextFireAt();
+        boolean misfired = now - fireAt > MISFIRE_GRACE_SECONDS;
+        long next = s.nextAfter(misfired ? now : fireAt);
+        if (next >= 0 && next <= now)
+            next = s.nextAfter(now); // interval shorter than the time we fell behind
+        boolean enqueue = !misfired || !Schedule.MISFIRE_SKIP.equalsIgnoreCase(s.misfire());
+        Job job = enqueue ? toJob(s, fireAt) : null;
+        ScheduleRepository.FireResult r = schedules.fire(s, fireAt, next, enqueue, job, jobs);
+        switch (r) {
+            case FIRED -> System.out.println("[scheduler] " + s.name() + " -> job " + job.getId()
+                    + (misfired ? " (misfire, fire_once)" : ""));
+            case SKIPPED_OVERLAP -> System.out.println("[scheduler] " + s.name()
+                    + " skipped: previous run " + s.lastJobId() + " still active");
+            case SKIPPED_MISFIRE -> System.out.println("[scheduler] " + s.name() + " skipped missed run at " + fireAt);
+            case LOST -> {
+                return false;
+            }
+        }
+        if (next >= 0) {
+            due.add(new Schedule(s.name(), s.spec(), s.command(), s.queue(), s.tenant(), s.priority(),
+                    s.maxRetries(), s.timeoutSeconds(), s.misfire(), s.allowOverlap(), s.enabled(), next, fireAt,
+                    r == ScheduleRepository.FireResult.FIRED ? job.getId() : s.lastJobId()));
+        }
+        return true;
+    }
+
+    private Job toJob(Schedule s, long fireAt) {
+        // deterministic id: a duplicate fire could never insert twice
+        Job job = new Job(s.name() + "@" + fireAt, s.command(),
+                s.maxRetries() != null ? s.maxRetries() : config.getInt("max_retries", 3),
+                s.priority() != null ? s.priority() : config.getInt("priority_default", 1));
+        job.setQueue(s.queue());
+        job.setTenant(s.tenant());
+        job.setTimeoutSeconds(s.timeoutSeconds() != null ? s.timeoutSeconds() : config.getInt("timeout_default", 0));
+        job.setRunAtEpoch(fireAt);
+        return job;
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.core;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Job run as {@code /bin/sh -c <command>} with stdout and stderr merged. */
+class ShellExecution implements JobExecution {
+    private final Process process;
+    private final StringBuilder out = new StringBuilder();
+    private final Thread readerThread;
+
+    ShellExecution(String command) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder("/bin/sh", "-c", command);
+        pb.redirectErrorStream(true);
+        process = pb.start();
+        readerThread = Thread.ofVirtual().start(() -> {
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    synchronized (out) {
+                        out.append(line).append('\n');
+                    }
+                }
+            } catch (Exception ignored) {
+            }
+        });
+    }
+
+    @Override
+    public Integer waitFor(long timeoutMs) throws InterruptedException {
+        return process.waitFor(timeoutMs, TimeUnit.MILLISECONDS) ? process.exitValue() : null;
+    }
+
+    @Override
+    public void kill() {
+        // list the tree before sh dies (its children are reparented then), but kill sh
+        // first so it can't move on to the next command when its child is killed
+        List<ProcessHandle> tree = process.descendants().toList();
+        process.destroyForcibly();
+        tree.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    @Override
+    public ProcessHandle process() {
+        return process.toHandle();
+    }
+
+    @Override
+    public String output() {
+        // ensure reader finished
+        try {
+            readerThread.join(1000);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (out) {
+            return out.toString();
+        }
+    }
+}
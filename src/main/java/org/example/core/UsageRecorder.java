@@ -0,0 +1,192 @@
+package org.example.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Per-run resource usage of shell jobs: CPU time, peak RSS and read/write bytes
+ * of the job's process tree ({@link ProcessTreeUsage}), one {@code job_usage}
+ * row per attempt. Rows are buffered and written every {@value #FLUSH_SECONDS}s
+ * and on shutdown, so accounting adds no transaction to the job path. Rows older
+ * than {@code usage_retention_days} (default 7) are pruned on each flush.
+ * <p>
+ * Runs are grouped by command template ({@link #template}) to find the most
+ * expensive kinds of job. Handler, pooled and batched runs have no process of
+ * their own and are not recorded.
+ */
+public class UsageRecorder extends JobRecorder {
+    public static final int FLUSH_SECONDS = 10;
+    public static final int DEFAULT_RETENTION_DAYS = 7;
+    public static final List<String> SORTS = List.of("cpu", "mean_cpu", "rss", "io", "wall", "runs");
+
+    private static final Pattern QUOTED = Pattern.compile("'[^']*'|\"[^\"]*\"");
+    private static final Pattern DIGIT = Pattern.compile(".*\\d.*");
+    private static final int MAX_TEMPLATE = 160;
+
+    /** One recorded run. */
+    public record Run(String jobId, String template, String queue, long finishedMs, int exitCode, long wallMs,
+            long cpuMs, long peakRssKb, long readBytes, long writeBytes, int processes) {
+    }
+
+    /** Runs of one command template in a window. */
+    public record TemplateUsage(String template, long runs, long failures, long cpuMs, double meanCpuMs,
+            long maxRssKb, double meanRssKb, long readBytes, long writeBytes, long wallMs) {
+    }
+
+    private final ConfigRepository config = new ConfigRepository();
+    private final ConcurrentLinkedQueue<Run> pending = new ConcurrentLinkedQueue<>();
+
+    public UsageRecorder() {
+        super("usage-recorder", "job usage");
+    }
+
+    @Override
+    public void onFinish(Job job, int exitCode, long claimedAtMs, long nanos) {
+        ProcessTreeUsage.Usage u = job.getUsage();
+        if (u == null)
+            return;
+        pending.add(new Run(job.getId(), template(job.getCommand()), job.getQueue(), System.currentTimeMillis(),
+                exitCode, nanos / 1_000_000, u.cpuMs(), u.peakRssKb(), u.readBytes(), u.writeBytes(), u.processes()));
+    }
+
+    @Override
+    protected long intervalMs() {
+        return FLUSH_SECONDS * 1000L;
+    }
+
+    /** Write the buffered runs, if any, in one transaction. */
+    @Override
+    public void flush(boolean last) {
+        List<Run> runs = new ArrayList<>();
+        for (Run r; (r = pending.poll()) != null;)
+            runs.add(r);
+        if (runs.isEmpty())
+            return;
+        long now = System.currentTimeMillis();
+        long retentionMs = config.getInt("usage_retention_days", DEFAULT_RETENTION_DAYS) * 86_400_000L;
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ins = c.prepareStatement(
+                    "INSERT INTO job_usage(job_id, template, queue, finished_ms, exit_code, wall_ms, cpu_ms, peak_rss_kb, "
+                            + "read_bytes, write_bytes, processes) VALUES(?,?,?,?,?,?,?,?,?,?,?)");
+                    PreparedStatement prune = c.prepareStatement("DELETE FROM job_usage WHERE finished_ms < ?")) {
+                for (Run r : runs) {
+                    ins.setString(1, r.jobId());
+                    ins.setString(2, r.template());
+                    ins.setString(3, r.queue());
+                    ins.setLong(4, r.finishedMs());
+                    ins.setInt(5, r.exitCode());
+                    ins.setLong(6, r.wallMs());
+                    ins.setLong(7, r.cpuMs());
+                    ins.setLong(8, r.peakRssKb());
+                    ins.setLong(9, r.readBytes());
+                    ins.setLong(10, r.writeBytes());
+                    ins.setInt(11, r.processes());
+                    ins.addBatch();
+                }
+                ins.executeBatch();
+                prune.setLong(1, now - retentionMs);
+                prune.executeUpdate();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Command template: quoted strings and every argument containing a digit
+     * become {@code ?} (runs of them collapse to one), {@code key=value}
+     * arguments keep the key, and the program name is kept as is. So
+     * {@code python3 resize.py --width=200 img_17.jpg} and
+     * {@code python3 resize.py --width=640 img_18.jpg} share
+     * {@code python3 resize.py --width=? ?}.
+     */
+    public static String template(String command) {
+        String[] tokens = QUOTED.matcher(command.strip()).replaceAll("?").split("\\s+");
+        StringBuilder sb = new StringBuilder(tokens[0]);
+        boolean lastWasParam = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String t = tokens[i];
+            int eq = t.indexOf('=');
+            if (eq > 0 && DIGIT.matcher(t.substring(eq + 1)).matches())
+                t = t.substring(0, eq + 1) + "?";
+            else if (t.equals("?") || DIGIT.matcher(t).matches())
+                t = "?";
+            boolean param = t.equals("?");
+            if (param && lastWasParam)
+                continue;
+            lastWasParam = param;
+            sb.append(' ').append(t);
+            if (sb.length() >= MAX_TEMPLATE)
+                return sb.substring(0, MAX_TEMPLATE) + "...";
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs finished at or after {@code sinceMs}, optionally for one queue, grouped
+     * by template and ordered by {@code sort} (one of {@link #SORTS}), largest first.
+     */
+    public static List<TemplateUsage> byTemplate(long sinceMs, String queue, String sort, int limit) {
+        String order = switch (sort) {
+            case "cpu" -> "cpu";
+            case "mean_cpu" -> "mean_cpu";
+            case "rss" -> "max_rss";
+            case "io" -> "read_bytes + write_bytes";
+            case "wall" -> "wall";
+            case "runs" -> "runs";
+            default -> throw new IllegalArgumentException("sort must be one of " + String.join(", ", SORTS));
+        };
+        String sql = "SELECT template, COUNT(1) AS runs, SUM(exit_code <> 0) AS failures, SUM(cpu_ms) AS cpu, "
+                + "AVG(cpu_ms) AS mean_cpu, MAX(peak_rss_kb) AS max_rss, AVG(peak_rss_kb) AS mean_rss, "
+                + "SUM(read_bytes) AS read_bytes, SUM(write_bytes) AS write_bytes, SUM(wall_ms) AS wall "
+                + "FROM job_usage WHERE finished_ms >= ?" + (queue != null ? " AND queue = ?" : "")
+                + " GROUP BY template ORDER BY " + order + " DESC LIMIT ?";
+        List<TemplateUsage> out = new ArrayList<>();
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, sinceMs);
+            if (queue != null)
+                ps.setString(i++, queue);
+            ps.setInt(i, Math.max(1, limit));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next())
+                    out.add(new TemplateUsage(rs.getString("template"), rs.getLong("runs"), rs.getLong("failures"),
+                            rs.getLong("cpu"), rs.getDouble("mean_cpu"), rs.getLong("max_rss"), rs.getDouble("mean_rss"),
+                            rs.getLong("read_bytes"), rs.getLong("write_bytes"), rs.getLong("wall")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    /** Recorded attempts of one job, oldest first. */
+    public static List<Run> forJob(String jobId) {
+        List<Run> out = new ArrayList<>();
+        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(
+                "SELECT * FROM job_usage WHERE job_id = ? ORDER BY finished_ms")) {
+            ps.setString(1, jobId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next())
+                    out.add(new Run(rs.getString("job_id"), rs.getString("template"), rs.getString("queue"),
+                            rs.getLong("finished_ms"), rs.getInt("exit_code"), rs.getLong("wall_ms"), rs.getLong("cpu_ms"),
+                            rs.getLong("peak_rss_kb"), rs.getLong("read_bytes"), rs.getLong("write_bytes"),
+                            rs.getInt("processes")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+}
@@ -42,6 +42,13 @@ public class WebServer {
             server.createContext("/api/jobs", WebServer::handleJobs);
             server.createContext("/api/workers", WebServer::handleWorkers);
             server.createContext("/api/workers/perf", WebServer::handleWorkersPerf);
+            server.createContext("/api/metrics/latency", WebServer::handleLatency);
+            server.createContext("/api/metrics/usage", WebServer::handleUsage);
+            server.createContext("/api/metrics/history", WebServer::handleHistory);
+            server.createContext("/metrics", MetricsExporter::handle);
+            server.createContext("/api/diag/db", WebServer::handleDiagDb);
+            DbStats.startPublisher();
+            MetricsExporter.registerDatabaseGauges(new JobRepository(2));
             server.createContext("/api/logs", WebServer::handleLogs);
             server.createContext("/api/dlq/retry", WebServer::handleDlqRetry);
             server.createContext("/api/config/list", WebServer::handleConfigList);
@@ -116,6 +123,8 @@ public class WebServer {
             body.put("states", states);
             body.put("workers", Map.of("idle", counts.idle(), "busy", counts.busy()));
             body.put("recent", recentArr);
+            // arrival/service rates, drain times and capacity flags (as in 'status --detail')
+            body.put("forecast", QueueRates.forecast(counts.idle() + counts.busy()));
             String json = gson.toJson(body);
             byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
             ex.sendResponseHeaders(200, bytes.length);
@@ -127,6 +136,159 @@ public class WebServer {
         }
     }
 
+    /**
+     * {@code GET /api/metrics/latency?minutes=60&by=queue&queue=Q}: merged
+     * queue-wait/execution/total percentiles (ms) from the worker snapshots.
+     */
+    private static void handleLatency(HttpExchange ex) throws IOException {
+        try {
+            setJsonHeaders(ex);
+            Map<String, List<String>> qp = queryParams(ex);
+            String by = qp(qp, "by", "queue");
+            long minutes;
+            try {
+                minutes = Long.parseLong(qp(qp, "minutes", "60"));
+            } catch (NumberFormatException e) {
+                minutes = -1;
+            }
+            if (minutes <= 0 || !List.of("queue", "priority", "queue,priority", "all").contains(by)) {
+                ex.sendResponseHeaders(400, -1);
+                return;
+            }
+            long since = System.currentTimeMillis() - minutes * 60_000L;
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("since", since);
+            body.put("by", by);
+            body.put("unit", "ms");
+            body.put("groups", LatencyRecorder.summaries(LatencyRecorder.query(since, qp(qp, "queue", null), by)));
+            byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch (Exception e) {
+            respondError(ex, e);
+        }
+    }
+
+    /**
+     * {@code GET /api/metrics/usage?hours=24&sort=cpu&queue=Q&limit=20}: CPU, peak
+     * RSS and I/O of shell jobs per command template; {@code ?job=ID} returns that
+     * job's recorded attempts instead.
+     */
+    private static void handleUsage(HttpExchange ex) throws IOException {
+        try {
+            setJsonHeaders(ex);
+            Map<String, List<String>> qp = queryParams(ex);
+            Object body;
+            String job = qp(qp, "job", null);
+            if (job != null) {
+                body = UsageRecorder.forJob(job);
+            } else {
+                String sort = qp(qp, "sort", "cpu");
+                long hours;
+                int limit;
+                try {
+                    hours = Long.parseLong(qp(qp, "hours", "24"));
+                    limit = Integer.parseInt(qp(qp, "limit", "20"));
+                } catch (NumberFormatException e) {
+                    hours = -1;
+                    limit = -1;
+                }
+                if (hours <= 0 || limit <= 0 || !UsageRecorder.SORTS.contains(sort)) {
+                    ex.sendResponseHeaders(400, -1);
+                    return;
+                }
+                body = UsageRecorder.byTemplate(System.currentTimeMillis() - hours * 3_600_000L, qp(qp, "queue", null),
+                        sort, limit);
+            }
+            byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch (Exception e) {
+            respondError(ex, e);
+        }
+    }
+
+    /**
+     * {@code GET /api/metrics/history?metric=jobs_completed&minutes=60&res=auto&label=Q}:
+     * one rollup series. {@code res} is {@code 10s}, {@code 1m}, {@code 1h} or
+     * {@code auto}, which picks the resolution by window length.
+     */
+    private static void handleHistory(HttpExchange ex) throws IOException {
+        try {
+            setJsonHeaders(ex);
+            Map<String, List<String>> qp = queryParams(ex);
+            String metric = qp(qp, "metric", "jobs_completed");
+            long minutes;
+            try {
+                minutes = Long.parseLong(qp(qp, "minutes", "60"));
+            } catch (NumberFormatException e) {
+                minutes = -1;
+            }
+            String resParam = qp(qp, "res", "auto");
+            int res;
+            try {
+                res = "auto".equals(resParam) ? MetricsRollup.resolutionFor(minutes * 60_000L)
+                        : MetricsRollup.parseResolution(resParam);
+            } catch (IllegalArgumentException e) {
+                res = -1;
+            }
+            if (minutes <= 0 || res < 0 || !MetricsRollup.SERIES.contains(metric)) {
+                ex.sendResponseHeaders(400, -1);
+                return;
+            }
+            long since = System.currentTimeMillis() - minutes * 60_000L;
+            List<Map<String, Object>> points = new ArrayList<>();
+            for (MetricsRollup.Point p : MetricsRollup.query(metric, qp(qp, "label", null), res, since)) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("t", p.bucketMs());
+                m.put("count", p.count());
+                m.put("mean", p.mean());
+                m.put("min", p.min());
+                m.put("max", p.max());
+                points.add(m);
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("metric", metric);
+            body.put("res", res);
+            body.put("since", since);
+            body.put("points", points);
+            byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch (Exception e) {
+            respondError(ex, e);
+        }
+    }
+
+    /** {@code GET /api/diag/db?limit=20}: per-statement DB stats merged across running processes. */
+    private static void handleDiagDb(HttpExchange ex) throws IOException {
+        try {
+            setJsonHeaders(ex);
+            int limit;
+            try {
+                limit = Integer.parseInt(qp(queryParams(ex), "limit", "20"));
+            } catch (NumberFormatException e) {
+                limit = 20;
+            }
+            List<DbStats.Summary> rows = DbStats.collect(false);
+            if (rows.size() > limit)
+                rows = rows.subList(0, limit);
+            byte[] bytes = gson.toJson(rows).getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch (Exception e) {
+            respondError(ex, e);
+        }
+    }
+
     private static void handleJobs(HttpExchange ex) throws IOException {
         try {
             setJsonHeaders(ex);
@@ -149,6 +311,8 @@ public class WebServer {
                 m.put("attempts", j.getAttempts());
                 m.put("maxRetries", j.getMaxRetries());
                 m.put("priority", j.getPriority());
+                m.put("queue", j.getQueue());
+                m.put("tenant", j.getTenant());
                 m.put("command", j.getCommand());
                 m.put("availableAt", j.getAvailableAtEpoch());
                 m.put("runAt", j.getRunAtEpoch());
@@ -321,7 +485,10 @@ public class WebServer {
                 return;
             }
             JobRepository repo = new JobRepository(2);
-            repo.retryDeadJob(id);
+            if (!repo.retryDeadJob(id)) {
+                ex.sendResponseHeaders(404, -1);
+                return;
+            }
             byte[] bytes = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
             ex.sendResponseHeaders(200, bytes.length);
             try (OutputStream os = ex.getResponseBody()) {
@@ -440,6 +607,11 @@ public class WebServer {
                 ex.sendResponseHeaders(400, -1);
                 return;
             }
+            // the endpoint is unauthenticated; a pool command would be run on every worker
+            if (ProcessPool.isCommandKey(key)) {
+                ex.sendResponseHeaders(403, -1);
+                return;
+            }
             new ConfigRepository().set(key, value);
             byte[] bytes = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
             ex.sendResponseHeaders(200, bytes.length);
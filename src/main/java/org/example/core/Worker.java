@@ -1,15 +1,20 @@
 package org.example.core;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Worker implements Runnable {
+    private static final List<JobListener> LISTENERS = new CopyOnWriteArrayList<>();
+
     private final String workerId;
     private final JobRepository repo;
     private final boolean produceStdout;
+    private final List<String> queues; // null = all queues
     private final AtomicBoolean running = new AtomicBoolean(true);
+    private volatile boolean busy;
     private final WorkerRegistry registry = new WorkerRegistry();
 
     public Worker(String workerId, JobRepository repo) {
@@ -17,15 +22,44 @@ public class Worker implements Runnable {
     }
 
     public Worker(String workerId, JobRepository repo, boolean produceStdout) {
+        this(workerId, repo, produceStdout, null);
+    }
+
+    public Worker(String workerId, JobRepository repo, boolean produceStdout, List<String> queues) {
         this.workerId = workerId;
         this.repo = repo;
         this.produceStdout = produceStdout;
+        this.queues = queues;
+    }
+
+    /** Observe job starts and finishes in every worker of this JVM. */
+    public static void addListener(JobListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    private static void fireStart(Job job) {
+        for (JobListener l : LISTENERS)
+            l.onStart(job);
+    }
+
+    private static void fireFinish(Job job, int exitCode, long claimedAtMs, long claimedNanos) {
+        long nanos = System.nanoTime() - claimedNanos;
+        for (JobListener l : LISTENERS)
+            l.onFinish(job, exitCode, claimedAtMs, nanos);
     }
 
     public void stop() {
         running.set(false);
     }
 
+    public boolean isStopping() {
+        return !running.get();
+    }
+
+    public boolean isBusy() {
+        return busy;
+    }
+
     @Override
     public void run() {
         registry.register(workerId);
@@ -36,66 +70,112 @@ public class Worker implements Runnable {
                     break;
                 }
                 registry.heartbeat(workerId, "IDLE");
-                Job job = repo.claimPendingJob(workerId);
+                Job job = repo.claimPendingJob(workerId, queues);
                 if (job == null) {
                     // periodic perf sample even when idle
                     WorkerPerf.sample(workerId);
-                    Thread.sleep(1000);
+                    // poll again sooner if a rate limit (not an empty queue) held us back
+                    Thread.sleep(QueueRateLimiter.pollDelayMs(1000));
                     continue;
                 }
+                long claimedAtMs = System.currentTimeMillis();
+                long claimedNanos = System.nanoTime();
+                busy = true;
                 registry.heartbeat(workerId, "BUSY");
+                fireStart(job);
+                if (runBatchIfEnabled(job, claimedAtMs, claimedNanos)) {
+                    registry.heartbeat(workerId, "IDLE");
+                    busy = false;
+                    WorkerPerf.sample(workerId);
+                    continue;
+                }
                 if (produceStdout)
-                    System.out.println("[" + workerId + "] Picked job: " + job.getId() + " cmd=" + job.getCommand());
+                    System.out.println("[" + workerId + "] Picked job: " + job.getId() + " queue=" + job.getQueue() + " cmd=" + job.getCommand());
                 long startMs = System.currentTimeMillis();
                 WorkerPerf.setCurrentJob(workerId, job.getId(), startMs);
                 // take an immediate sample at job start so charts update during BUSY
                 WorkerPerf.sample(workerId);
-                ProcessBuilder pb = new ProcessBuilder("/bin/sh", "-c", job.getCommand());
-                pb.redirectErrorStream(true);
-                Process p = pb.start();
+                JobExecution exec;
                 StringBuilder out = new StringBuilder();
-                Thread readerThread = Thread.ofVirtual().unstarted(() -> {
-                    try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                        String line;
-                        while ((line = r.readLine()) != null) {
-                            out.append(line).append('\n');
-                        }
-                    } catch (Exception ignored) {
-                    }
-                });
-                readerThread.start();
                 Integer exitCode = null;
+                JobEvents.Exit exitEvent = new JobEvents.Exit();
+                exitEvent.begin();
+                JobEvents.Spawn spawnEvent = new JobEvents.Spawn();
+                spawnEvent.begin();
+                try {
+                    exec = JobExecution.start(job);
+                } catch (Exception e) {
+                    exec = null;
+                    exitCode = 127;
+                    out.append("failed to start: ").append(e.getMessage()).append('\n');
+                }
+                spawnEvent.end();
+                if (spawnEvent.shouldCommit()) {
+                    spawnEvent.jobId = job.getId();
+                    spawnEvent.workerId = workerId;
+                    spawnEvent.kind = JobHandlers.isHandlerCommand(job.getCommand()) ? "handler"
+                            : exec instanceof ShellExecution || exec == null ? "shell" : "pool";
+                    spawnEvent.command = JobEvents.clip(job.getCommand());
+                    spawnEvent.commit();
+                }
+                ProcessTreeUsage usage = exec != null && exec.process() != null && ProcessTreeUsage.supported()
+                        ? new ProcessTreeUsage(exec.process())
+                        : null;
                 int timeoutSec = job.getTimeoutSeconds();
                 long deadlineMs = timeoutSec > 0 ? startMs + timeoutSec * 1000L : Long.MAX_VALUE;
                 long lastPerfSampleMs = startMs;
+                long lastLeaseRenewMs = startMs;
+                long leaseRenewEveryMs = Math.max(1, repo.getLeaseSeconds() / 3) * 1000L;
                 while (exitCode == null) {
-                    try {
-                        exitCode = p.exitValue();
-                    } catch (IllegalThreadStateException itse) {
-                        // still running
-                    }
+                    // returns as soon as the job exits; otherwise wakes every 200ms for housekeeping
+                    exitCode = exec.waitFor(Math.max(1, Math.min(200, deadlineMs - System.currentTimeMillis())));
+                    if (exitCode != null)
+                        break;
+                    if (usage != null)
+                        usage.sample();
                     // periodically sample perf while job is running so charts update in BUSY state
                     long now = System.currentTimeMillis();
                     if (now - lastPerfSampleMs >= 1000) {
                         WorkerPerf.sample(workerId);
                         lastPerfSampleMs = now;
                     }
+                    // heartbeat + lease renewal keeps the reaper away from live jobs
+                    if (now - lastLeaseRenewMs >= leaseRenewEveryMs) {
+                        registry.heartbeat(workerId, "BUSY");
+                        repo.renewLeases(workerId);
+                        lastLeaseRenewMs = now;
+                    }
                     if (System.currentTimeMillis() > deadlineMs) {
                         // timeout
-                        p.destroyForcibly();
+                        exec.kill();
                         exitCode = -999; // custom timeout code
-                        out.append("\n[TIMEOUT after " + timeoutSec + "s]\n");
                         break;
                     }
-                    if (exitCode == null) {
-                        Thread.sleep(200);
-                    }
                 }
-                // ensure reader finished
-                try {
-                    readerThread.join(1000);
-                } catch (InterruptedException ignored) {
+                job.setUsage(usage != null ? usage.result() : null);
+                exitEvent.end();
+                if (exitEvent.shouldCommit()) {
+                    exitEvent.jobId = job.getId();
+                    exitEvent.workerId = workerId;
+                    exitEvent.exitCode = exitCode;
+                    exitEvent.timedOut = exitCode == -999;
+                    exitEvent.commit();
+                }
+                if (exec != null) {
+                    JobEvents.OutputCapture captureEvent = new JobEvents.OutputCapture();
+                    captureEvent.begin();
+                    String captured = exec.output();
+                    out.append(captured);
+                    captureEvent.end();
+                    if (captureEvent.shouldCommit()) {
+                        captureEvent.jobId = job.getId();
+                        captureEvent.workerId = workerId;
+                        captureEvent.bytes = captured.length();
+                        captureEvent.commit();
+                    }
                 }
+                if (exitCode == -999)
+                    out.append("\n[TIMEOUT after " + timeoutSec + "s]\n");
                 long durationSec = (System.currentTimeMillis() - startMs) / 1000;
                 WorkerPerf.finishJob(workerId, System.currentTimeMillis() - startMs);
                 String logEntry = String.format("[%s] job=%s state=%s attempts=%d duration=%ds\noutput:\n%s\n",
@@ -103,35 +183,34 @@ public class Worker implements Runnable {
                         (exitCode == 0 ? "COMPLETED" : (exitCode == -999 ? "TIMEOUT" : "FAILED")),
                         job.getAttempts() + 1, durationSec,
                         out.toString());
-                // write to per-worker log file
-                try {
-                    java.nio.file.Path logFile = java.nio.file.Paths.get(Database.baseDir(), "logs", workerId + ".log");
-                    java.nio.file.Files.writeString(logFile,
-                            Instant.now().toString() + " " + logEntry + System.lineSeparator(),
-                            java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
-                } catch (Exception e) {
-                    // ignore logging errors
-                }
+                appendLog(Instant.now().toString() + " " + logEntry + System.lineSeparator());
 
                 if (exitCode == 0) {
-                    repo.markJobCompleted(job.getId(), out.toString());
-                    if (produceStdout)
+                    boolean applied = repo.markJobCompleted(job.getId(), workerId, out.toString());
+                    if (!applied)
+                        System.err.println("[" + workerId + "] Lease on job=" + job.getId() + " lost; result discarded");
+                    else if (produceStdout)
                         System.out.println(
                                 "[" + workerId + "] Completed job=" + job.getId() + " in " + durationSec + "s");
                 } else {
                     String err = (exitCode == -999 ? "timeout after " + timeoutSec + "s" : ("exit=" + exitCode))
                             + "; output=" + out.toString();
-                    repo.handleFailedAttempt(job, err);
-                    if (produceStdout)
+                    boolean applied = repo.handleFailedAttempt(job, workerId, err);
+                    if (!applied)
+                        System.err.println("[" + workerId + "] Lease on job=" + job.getId() + " lost; result discarded");
+                    else if (produceStdout)
                         System.out.println("[" + workerId + "] Failed job=" + job.getId()
                                 + (exitCode == -999 ? " (TIMEOUT)" : " exit=" + exitCode));
                 }
+                fireFinish(job, exitCode, claimedAtMs, claimedNanos);
                 registry.heartbeat(workerId, "IDLE");
+                busy = false;
                 WorkerPerf.sample(workerId);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             } catch (Exception e) {
+                busy = false;
                 System.err.println("Worker error: " + e.getMessage());
                 try {
                     Thread.sleep(1000);
@@ -143,4 +222,114 @@ public class Worker implements Runnable {
         System.out.println("[" + workerId + "] Stopped");
         registry.markStopped(workerId);
     }
+
+    /** Append to the per-worker log file. */
+    private void appendLog(String text) {
+        try {
+            java.nio.file.Path logFile = java.nio.file.Paths.get(Database.baseDir(), "logs", workerId + ".log");
+            java.nio.file.Files.writeString(logFile, text,
+                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+        } catch (Exception e) {
+            // ignore logging errors
+        }
+    }
+
+    /**
+     * If the job's queue has {@code batch_size > 1}, claim more jobs from it and
+     * run them all in one shell session ({@link BatchExecution}), then ack every
+     * result in one transaction. Each job keeps its own timeout, output, retry and
+     * DLQ handling; jobs that never started because the batch was cut short go back
+     * to PENDING without an attempt.
+     *
+     * @return false if the job should take the normal single-job path
+     */
+    private boolean runBatchIfEnabled(Job first, long firstClaimedAtMs, long firstClaimedNanos) throws Exception {
+        int batchSize = repo.batchSize(first.getQueue());
+        if (batchSize <= 1 || !BatchExecution.isBatchable(first))
+            return false;
+        List<Job> jobs = new ArrayList<>();
+        jobs.add(first);
+        jobs.addAll(repo.claimBatch(workerId, first, batchSize - 1));
+        if (jobs.size() == 1)
+            return false;
+        long claimedAtMs = System.currentTimeMillis();
+        long claimedNanos = System.nanoTime();
+        // first was already reported by the caller
+        for (int i = 1; i < jobs.size(); i++)
+            fireStart(jobs.get(i));
+        if (produceStdout)
+            System.out.println("[" + workerId + "] Picked batch of " + jobs.size() + " jobs queue=" + first.getQueue());
+        long startMs = System.currentTimeMillis();
+        WorkerPerf.setCurrentJob(workerId, first.getId(), startMs);
+        WorkerPerf.sample(workerId);
+        BatchExecution exec = new BatchExecution(jobs);
+        int timedOut = -1;
+        long lastPerfSampleMs = startMs;
+        long lastLeaseRenewMs = startMs;
+        long leaseRenewEveryMs = Math.max(1, repo.getLeaseSeconds() / 3) * 1000L;
+        while (!exec.waitFor(200)) {
+            long now = System.currentTimeMillis();
+            if (now - lastPerfSampleMs >= 1000) {
+                WorkerPerf.sample(workerId);
+                lastPerfSampleMs = now;
+            }
+            int running = exec.running();
+            if (now - lastLeaseRenewMs >= leaseRenewEveryMs) {
+                registry.heartbeat(workerId, "BUSY");
+                repo.renewBatchLeases(workerId, running >= 0 ? exec.job(running).getId() : null,
+                        exec.runningSinceMs() / 1000);
+                lastLeaseRenewMs = now;
+            }
+            if (running >= 0) {
+                int timeoutSec = exec.job(running).getTimeoutSeconds();
+                if (timeoutSec > 0 && now - exec.runningSinceMs() > timeoutSec * 1000L) {
+                    exec.kill();
+                    exec.waitFor(1000);
+                    timedOut = running;
+                    break;
+                }
+            }
+        }
+        long elapsedMs = System.currentTimeMillis() - startMs;
+        // one perf sample per batch: per-job samples would add back the per-job writes
+        WorkerPerf.finishJob(workerId, elapsedMs / jobs.size());
+        List<JobRepository.BatchResult> results = new ArrayList<>();
+        StringBuilder log = new StringBuilder();
+        String stamp = Instant.now().toString();
+        for (int i = 0; i < exec.size(); i++) {
+            Job job = exec.job(i);
+            Integer exitCode = i == timedOut ? Integer.valueOf(-999) : exec.exitCode(i);
+            if (exitCode == null && exec.started(i))
+                exitCode = 1; // started but the session died under it
+            String out = exec.output(i);
+            if (exitCode != null && exitCode == -999)
+                out += "\n[TIMEOUT after " + job.getTimeoutSeconds() + "s]\n";
+            String state = exitCode == null ? "RELEASED"
+                    : exitCode == 0 ? "COMPLETED" : (exitCode == -999 ? "TIMEOUT" : "FAILED");
+            log.append(stamp).append(' ').append(String.format(
+                    "[%s] job=%s state=%s attempts=%d duration=%ds batch=%d/%d\noutput:\n%s\n",
+                    workerId, job.getId(), state, job.getAttempts() + (exitCode == null ? 0 : 1),
+                    elapsedMs / 1000, i + 1, exec.size(), out)).append(System.lineSeparator());
+            String err = exitCode == null || exitCode == 0 ? null
+                    : (exitCode == -999 ? "timeout after " + job.getTimeoutSeconds() + "s" : ("exit=" + exitCode))
+                            + "; output=" + out;
+            results.add(new JobRepository.BatchResult(job, exitCode, out, err));
+            if (exitCode == null)
+                QueueRateLimiter.refund(job.getQueue());
+            if (produceStdout && exitCode != null)
+                System.out.println("[" + workerId + "] " + (exitCode == 0 ? "Completed" : "Failed")
+                        + " job=" + job.getId() + (exitCode == 0 ? "" : exitCode == -999 ? " (TIMEOUT)" : " exit=" + exitCode));
+        }
+        appendLog(log.toString());
+        repo.ackBatch(workerId, results);
+        for (JobRepository.BatchResult r : results) {
+            if (r.exitCode() == null)
+                continue;
+            if (r.job() == first)
+                fireFinish(r.job(), r.exitCode(), firstClaimedAtMs, firstClaimedNanos);
+            else
+                fireFinish(r.job(), r.exitCode(), claimedAtMs, claimedNanos);
+        }
+        return true;
+    }
 }
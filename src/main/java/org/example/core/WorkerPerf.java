@@ -12,7 +12,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * In-memory performance/telemetry tracking for workers.
- * Lightweight ring buffers keep recent samples (heap usage, job durations).
+ * Lightweight ring buffers keep recent samples (heap usage, job durations);
+ * longer history is kept downsampled by {@link MetricsRollup}.
  */
 public class WorkerPerf {
     public static final int MAX_SAMPLES = 30; // keep last 30 samples (~1 minute at 2s interval)
@@ -26,16 +27,8 @@ public class WorkerPerf {
         Metrics m = metrics(workerId);
         m.currentJobId = jobId;
         m.currentJobStartMs = startMs;
-        // persist current job state to workers table
-        try (Connection c = Database.getConnection();
-                PreparedStatement ps = c.prepareStatement(
-                        "UPDATE workers SET current_job_id=?, current_job_start_ms=? WHERE worker_id=?")) {
-            ps.setString(1, jobId);
-            ps.setLong(2, startMs);
-            ps.setString(3, workerId);
-            ps.executeUpdate();
-        } catch (SQLException ignored) {
-        }
+        // coalesced into the next batched workers-table flush
+        WorkerRegistry.recordCurrentJob(workerId, jobId, startMs);
     }
 
     public static void finishJob(String workerId, long durationMs) {
@@ -44,15 +37,7 @@ public class WorkerPerf {
         m.addJobDuration(durationMs);
         m.currentJobId = null;
         m.currentJobStartMs = 0;
-        // update workers table and record a perf sample that includes the job duration
-        try (Connection c = Database.getConnection();
-                PreparedStatement ps = c.prepareStatement(
-                        "UPDATE workers SET last_finished_ms=?, current_job_id=NULL, current_job_start_ms=NULL WHERE worker_id=?")) {
-            ps.setLong(1, m.lastFinishedMs);
-            ps.setString(2, workerId);
-            ps.executeUpdate();
-        } catch (SQLException ignored) {
-        }
+        WorkerRegistry.recordFinished(workerId, m.lastFinishedMs);
 
         // capture a sample with duration at finish time
         persistSample(workerId, durationMs);
@@ -78,6 +63,9 @@ public class WorkerPerf {
         }
         m.addHeapSample(heapUsed);
         m.addCpuSample(load);
+        MetricsRollup.record("heap_used_bytes", null, heapUsed);
+        if (load >= 0)
+            MetricsRollup.record("cpu_load", null, load);
 
         // persist sample
         try (Connection c = Database.getConnection();
@@ -107,6 +95,17 @@ public class WorkerPerf {
         }
     }
 
+    /** Whole-host CPU load (0..1, negative if unavailable), from the same MXBean as the samples. */
+    public static double hostCpuLoad() {
+        try {
+            com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory
+                    .getOperatingSystemMXBean();
+            return os.getCpuLoad();
+        } catch (Throwable t) {
+            return -1;
+        }
+    }
+
     public static List<MetricsSnapshot> snapshots() {
         List<MetricsSnapshot> list = new ArrayList<>();
         long now = System.currentTimeMillis();
@@ -0,0 +1,95 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The virtual-thread workers of one {@code worker start} JVM. Fixed-size runs
+ * just add {@code --count} workers; the {@link Autoscaler} grows and drains it.
+ */
+public class WorkerPool {
+    private final JobRepository repo;
+    private final boolean produceStdout;
+    private final List<String> queues;
+    private final List<Member> members = new ArrayList<>();
+
+    public WorkerPool(JobRepository repo, boolean produceStdout, List<String> queues) {
+        this.repo = repo;
+        this.produceStdout = produceStdout;
+        this.queues = queues;
+    }
+
+    public synchronized String add() {
+        String wid = "worker-" + UUID.randomUUID().toString().substring(0, 8);
+        Worker w = new Worker(wid, repo, produceStdout, queues);
+        Thread t = Thread.ofVirtual().name(wid).start(w);
+        members.add(new Member(w, t));
+        System.out.println("Started " + wid);
+        return wid;
+    }
+
+    /** Workers still accepting jobs (draining ones excluded). */
+    public synchronized int size() {
+        prune();
+        int n = 0;
+        for (Member m : members)
+            if (!m.worker.isStopping())
+                n++;
+        return n;
+    }
+
+    public synchronized int busyCount() {
+        int n = 0;
+        for (Member m : members)
+            if (!m.worker.isStopping() && m.worker.isBusy())
+                n++;
+        return n;
+    }
+
+    /**
+     * Drain up to {@code n} idle workers. A drained worker claims nothing new and
+     * exits from its loop; busy workers are never picked, and one that races into
+     * a claim finishes that job before leaving.
+     *
+     * @return number of workers asked to drain
+     */
+    public synchronized int retireIdle(int n) {
+        int retired = 0;
+        for (Member m : members) {
+            if (retired >= n)
+                break;
+            if (!m.worker.isStopping() && !m.worker.isBusy()) {
+                m.worker.stop();
+                retired++;
+            }
+        }
+        return retired;
+    }
+
+    public void stopAll() {
+        for (Member m : snapshot())
+            m.worker.stop();
+    }
+
+    /** Wait for every current worker thread to exit (0 = no limit per thread). */
+    public void joinAll(long timeoutMs) throws InterruptedException {
+        for (Member m : snapshot()) {
+            if (timeoutMs > 0)
+                m.thread.join(timeoutMs);
+            else
+                m.thread.join();
+        }
+    }
+
+    private synchronized List<Member> snapshot() {
+        return new ArrayList<>(members);
+    }
+
+    private void prune() {
+        members.removeIf(m -> !m.thread.isAlive());
+    }
+
+    private record Member(Worker worker, Thread thread) {
+    }
+}
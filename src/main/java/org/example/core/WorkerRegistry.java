@@ -4,11 +4,27 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Worker rows in the {@code workers} table.
+ * Heartbeats and current-job state are kept in memory and written by a single
+ * flusher thread per JVM, one batched transaction every
+ * {@code heartbeat_flush_ms} (default {@link #DEFAULT_FLUSH_MS}); the dashboard
+ * therefore lags live state by at most that interval.
+ */
 public class WorkerRegistry {
+    public static final int DEFAULT_FLUSH_MS = 1000;
+
+    private static final Map<String, State> STATES = new ConcurrentHashMap<>();
+    private static Thread flusher;
+
     public void register(String workerId) {
         Database.init();
         String sql = "INSERT INTO workers(worker_id,status,last_heartbeat,started_at) VALUES(?,?,?,?)" +
@@ -23,28 +39,106 @@ public class WorkerRegistry {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        STATES.put(workerId, new State("IDLE", now));
+        startFlusher();
     }
 
     public void heartbeat(String workerId, String status) {
-        String sql = "UPDATE workers SET status=?, last_heartbeat=? WHERE worker_id=?";
-        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, status);
-            ps.setLong(2, Instant.now().getEpochSecond());
-            ps.setString(3, workerId);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        state(workerId).update(st -> {
+            st.status = status;
+            st.lastHeartbeat = Instant.now().getEpochSecond();
+        });
     }
 
     public void markStopped(String workerId) {
-        String sql = "UPDATE workers SET status='STOPPED', last_heartbeat=? WHERE worker_id=?";
-        try (Connection c = Database.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setLong(1, Instant.now().getEpochSecond());
-            ps.setString(2, workerId);
-            ps.executeUpdate();
+        heartbeat(workerId, "STOPPED");
+        flush();
+        STATES.remove(workerId);
+    }
+
+    static void recordCurrentJob(String workerId, String jobId, long startMs) {
+        state(workerId).update(st -> {
+            st.currentJobId = jobId;
+            st.currentJobStartMs = startMs;
+        });
+    }
+
+    static void recordFinished(String workerId, long finishedMs) {
+        state(workerId).update(st -> {
+            st.lastFinishedMs = finishedMs;
+            st.currentJobId = null;
+            st.currentJobStartMs = 0;
+        });
+    }
+
+    private static State state(String workerId) {
+        return STATES.computeIfAbsent(workerId, id -> new State("IDLE", Instant.now().getEpochSecond()));
+    }
+
+    private static synchronized void startFlusher() {
+        if (flusher != null)
+            return;
+        ConfigRepository cfg = new ConfigRepository();
+        flusher = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(Math.max(100, cfg.getInt("heartbeat_flush_ms", DEFAULT_FLUSH_MS)));
+                    flush();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Worker registry flush failed: " + e.getMessage());
+                }
+            }
+        }, "worker-registry-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** Write every changed worker row in one transaction. */
+    static synchronized void flush() {
+        Map<String, State> dirty = new HashMap<>();
+        for (Map.Entry<String, State> e : STATES.entrySet()) {
+            State copy = e.getValue().takeIfDirty();
+            if (copy != null)
+                dirty.put(e.getKey(), copy);
+        }
+        if (dirty.isEmpty())
+            return;
+        String sql = "UPDATE workers SET status=?, last_heartbeat=?, current_job_id=?, current_job_start_ms=?, last_finished_ms=? WHERE worker_id=?";
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (Map.Entry<String, State> e : dirty.entrySet()) {
+                    State st = e.getValue();
+                    ps.setString(1, st.status);
+                    ps.setLong(2, st.lastHeartbeat);
+                    ps.setString(3, st.currentJobId);
+                    if (st.currentJobId == null)
+                        ps.setNull(4, Types.INTEGER);
+                    else
+                        ps.setLong(4, st.currentJobStartMs);
+                    if (st.lastFinishedMs == 0)
+                        ps.setNull(5, Types.INTEGER);
+                    else
+                        ps.setLong(5, st.lastFinishedMs);
+                    ps.setString(6, e.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            // keep the rows dirty so the next interval retries them
+            for (String wid : dirty.keySet()) {
+                State st = STATES.get(wid);
+                if (st != null)
+                    st.markDirty();
+            }
+            throw new RuntimeException("Failed to flush worker registry", e);
         }
     }
 
@@ -87,6 +181,42 @@ public class WorkerRegistry {
         return out;
     }
 
+    /** Mutable in-memory worker row; guarded by its own monitor. */
+    private static class State {
+        String status;
+        long lastHeartbeat;
+        String currentJobId;
+        long currentJobStartMs;
+        long lastFinishedMs;
+        private boolean dirty;
+
+        State(String status, long lastHeartbeat) {
+            this.status = status;
+            this.lastHeartbeat = lastHeartbeat;
+        }
+
+        synchronized void update(java.util.function.Consumer<State> change) {
+            change.accept(this);
+            dirty = true;
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        /** Copy of this row if it changed since the last flush, clearing the flag. */
+        synchronized State takeIfDirty() {
+            if (!dirty)
+                return null;
+            dirty = false;
+            State copy = new State(status, lastHeartbeat);
+            copy.currentJobId = currentJobId;
+            copy.currentJobStartMs = currentJobStartMs;
+            copy.lastFinishedMs = lastFinishedMs;
+            return copy;
+        }
+    }
+
     public record Counts(int idle, int busy) {
     }
 
@@ -0,0 +1,106 @@
+package org.example.core.handlers;
+
+import org.example.core.JobHandler;
+
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Built-in in-process handlers, mainly for benchmarking the queue without
+ * fork/exec noise:
+ * <ul>
+ * <li>{@code java:noop} – returns immediately</li>
+ * <li>{@code java:sleep?ms=100} – sleeps</li>
+ * <li>{@code java:cpu?rounds=100000} – SHA-256 chain, CPU bound</li>
+ * <li>{@code java:echo?text=hi&repeat=1000} – output heavy</li>
+ * <li>{@code java:fail?code=2} – exits non-zero</li>
+ * </ul>
+ */
+public final class BuiltinHandlers {
+    private BuiltinHandlers() {
+    }
+
+    static int intArg(Map<String, String> args, String key, int def) {
+        try {
+            return Integer.parseInt(args.getOrDefault(key, Integer.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static class Noop implements JobHandler {
+        @Override
+        public String name() {
+            return "noop";
+        }
+
+        @Override
+        public int handle(Map<String, String> args, PrintWriter out) {
+            return 0;
+        }
+    }
+
+    public static class Sleep implements JobHandler {
+        @Override
+        public String name() {
+            return "sleep";
+        }
+
+        @Override
+        public int handle(Map<String, String> args, PrintWriter out) throws InterruptedException {
+            Thread.sleep(intArg(args, "ms", 100));
+            return 0;
+        }
+    }
+
+    public static class Cpu implements JobHandler {
+        @Override
+        public String name() {
+            return "cpu";
+        }
+
+        @Override
+        public int handle(Map<String, String> args, PrintWriter out) throws Exception {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] h = new byte[32];
+            int rounds = intArg(args, "rounds", 100_000);
+            for (int i = 0; i < rounds; i++) {
+                if ((i & 0xFFF) == 0 && Thread.currentThread().isInterrupted())
+                    throw new InterruptedException();
+                h = md.digest(h);
+            }
+            out.printf("%02x%02x%02x%02x%n", h[0], h[1], h[2], h[3]);
+            return 0;
+        }
+    }
+
+    public static class Echo implements JobHandler {
+        @Override
+        public String name() {
+            return "echo";
+        }
+
+        @Override
+        public int handle(Map<String, String> args, PrintWriter out) {
+            String text = args.getOrDefault("text", "");
+            int repeat = intArg(args, "repeat", 1);
+            for (int i = 0; i < repeat; i++)
+                out.println(text);
+            return 0;
+        }
+    }
+
+    public static class Fail implements JobHandler {
+        @Override
+        public String name() {
+            return "fail";
+        }
+
+        @Override
+        public int handle(Map<String, String> args, PrintWriter out) {
+            out.println("failing on purpose");
+            return intArg(args, "code", 1);
+        }
+    }
+}